@@ -0,0 +1,262 @@
+package bench;
+
+import model.BallotStore;
+import model.RCVBallotReader;
+import model.RCVSimulator;
+import model.TabulationEngine;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Throughput and allocation benchmarks for the ballot reader and the tabulation:
+//     ingest        RCVBallotReader.loadBallots, the reading behind makeBallotsFromFile
+//     round         one RCVSimulator.doOneRound call (console output discarded)
+//     election      TabulationEngine run to completion over a loaded store
+//     election-dedup the same with deduplicated ballots
+// Each benchmark is warmed up, then measured over several fixed-length iterations; every
+// iteration reports operations per second, bytes allocated per operation and the allocation
+// rate, plus the garbage collections it triggered.
+//     java -cp out bench.BenchmarkRunner [--ballots N] [--candidates C] [--ranks R] [--skip-rate P]
+//          [--overvote-rate P] [--seed S] [--threads N] [--warmup N] [--iterations N] [--time-ms T]
+//          [--only name,...] [--file ballot file] [--off-heap]
+public class BenchmarkRunner {
+
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    private static volatile long sink; // results are folded in here so no work can be skipped
+
+    private long ballots = 100_000;
+    private int candidates = 8;
+    private int ranks = 6;
+    private double skipRate = 0.05;
+    private double overvoteRate = 0.01;
+    private long seed = 1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int warmupIterations = 3;
+    private int iterations = 5;
+    private long iterationMillis = 2000;
+    private List<String> only;
+    private Path file;
+    private boolean offHeap;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        try {
+            runner.parseArguments(args);
+        } catch (IllegalArgumentException badArgument) {
+            System.err.println(badArgument.getMessage());
+            System.exit(2);
+        }
+        runner.run();
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--off-heap")) {
+                offHeap = true;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--ballots" -> ballots = Long.parseLong(value);
+                case "--candidates" -> candidates = Integer.parseInt(value);
+                case "--ranks" -> ranks = Integer.parseInt(value);
+                case "--skip-rate" -> skipRate = Double.parseDouble(value);
+                case "--overvote-rate" -> overvoteRate = Double.parseDouble(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--threads" -> threads = Integer.parseInt(value);
+                case "--warmup" -> warmupIterations = Integer.parseInt(value);
+                case "--iterations" -> iterations = Integer.parseInt(value);
+                case "--time-ms" -> iterationMillis = Long.parseLong(value);
+                case "--only" -> only = Arrays.asList(value.split(","));
+                case "--file" -> file = Paths.get(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i - 1]);
+            }
+        }
+    }
+
+    private void run() throws Exception {
+        Path ballotFile = file;
+        if (ballotFile == null || !Files.exists(ballotFile)) {
+            if (ballotFile == null) {
+                ballotFile = Files.createTempFile("rcv-bench", ".txt");
+                ballotFile.toFile().deleteOnExit();
+            }
+            System.out.printf("generating %,d ballots: %d candidates, %d ranks, skip rate %.3f, overvote rate %.3f%n",
+                    ballots, candidates, ranks, skipRate, overvoteRate);
+            new SyntheticBallotGenerator(candidates, ranks, skipRate, overvoteRate, seed).write(ballotFile, ballots);
+        }
+        System.out.printf("ballot file %s (%,d bytes), %d threads, %s storage%n", ballotFile, Files.size(ballotFile),
+                threads, offHeap ? "off-heap" : "heap");
+
+        RCVBallotReader reader = new RCVBallotReader();
+        reader.setOffHeapStorage(offHeap);
+        BallotStore ballotStore = reader.loadBallots(ballotFile, threads);
+        Path ingestFile = ballotFile;
+
+        Map<String, Operation> benchmarks = new LinkedHashMap<>();
+        benchmarks.put("ingest", () -> {
+            try (BallotStore loaded = reader.loadBallots(ingestFile, threads)) {
+                return loaded.size();
+            }
+        });
+        benchmarks.put("round", new RoundOperation(ballotStore));
+        benchmarks.put("election", () -> election(ballotStore, false));
+        benchmarks.put("election-dedup", () -> election(ballotStore, true));
+
+        for (Map.Entry<String, Operation> benchmark : benchmarks.entrySet()) {
+            if (only == null || only.contains(benchmark.getKey())) {
+                measure(benchmark.getKey(), benchmark.getValue());
+            }
+        }
+        ballotStore.close();
+    }
+
+    private static long election(BallotStore ballotStore, boolean deduplicate) {
+        TabulationEngine engine = new TabulationEngine();
+        engine.setSeed(1L); // the same lots every time, so every operation does the same work
+        engine.setDeduplicateBallots(deduplicate);
+        return engine.tabulate(ballotStore).getRounds().size();
+    }
+
+    private void measure(String name, Operation operation) throws Exception {
+        System.out.println();
+        System.out.println("# " + name);
+        for (int i = 0; i < warmupIterations; i++) {
+            Sample sample = iterate(operation);
+            System.out.printf("warmup %d: %s%n", i + 1, sample);
+        }
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < iterations; i++) {
+            Sample sample = iterate(operation);
+            samples.add(sample);
+            System.out.printf("iteration %d: %s%n", i + 1, sample);
+        }
+        if (samples.isEmpty()) {
+            return;
+        }
+        double mean = 0;
+        double allocated = 0;
+        for (Sample sample : samples) {
+            mean += sample.opsPerSecond() / samples.size();
+            allocated += sample.bytesPerOp() / samples.size();
+        }
+        double variance = 0;
+        for (Sample sample : samples) {
+            variance += Math.pow(sample.opsPerSecond() - mean, 2) / samples.size();
+        }
+        System.out.printf("%s: %.3f +/- %.3f ops/s, %,.0f B/op%n", name, mean, Math.sqrt(variance), allocated);
+    }
+
+    // Runs the operation until the iteration time is used up; always at least once
+    private Sample iterate(Operation operation) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+        long allocatedBefore = threads.getTotalThreadAllocatedBytes();
+        long start = System.nanoTime();
+        long deadline = start + iterationMillis * 1_000_000L;
+        long ops = 0;
+        long now;
+        do {
+            sink += operation.run();
+            ops++;
+            now = System.nanoTime();
+        } while (now < deadline);
+        long allocated = threads.getTotalThreadAllocatedBytes() - allocatedBefore;
+        return new Sample(ops, now - start, allocated, gcCount() - gcCountBefore, gcTime() - gcTimeBefore);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        return time;
+    }
+
+    private interface Operation {
+        long run() throws Exception;
+    }
+
+    // One doOneRound call per operation; a new simulator starts once the previous one has a winner
+    private static class RoundOperation implements Operation {
+        private final RCVBallotReader reader;
+        private RCVSimulator simulator;
+
+        RoundOperation(BallotStore ballotStore) {
+            // The simulator reads through its reader on round 0; hand it the loaded store instead
+            this.reader = new RCVBallotReader() {
+                @Override
+                public BallotStore makeBallotsFromFile() {
+                    return ballotStore;
+                }
+            };
+        }
+
+        @Override
+        public long run() {
+            if (simulator == null || simulator.isWinnerFound()) {
+                simulator = new RCVSimulator(reader);
+            }
+            PrintStream console = System.out;
+            System.setOut(DISCARD);
+            try {
+                return simulator.doOneRound().length();
+            } finally {
+                System.setOut(console);
+            }
+        }
+    }
+
+    private static class Sample {
+        private final long ops;
+        private final long nanos;
+        private final long allocatedBytes;
+        private final long gcCount;
+        private final long gcMillis;
+
+        Sample(long ops, long nanos, long allocatedBytes, long gcCount, long gcMillis) {
+            this.ops = ops;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        double opsPerSecond() {
+            return ops * 1e9 / nanos;
+        }
+
+        double bytesPerOp() {
+            return (double) allocatedBytes / ops;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.3f ops/s, %,.0f B/op, %.1f MB/s allocated, %d GCs (%d ms)",
+                    opsPerSecond(), bytesPerOp(), allocatedBytes * 1e3 / nanos, gcCount, gcMillis);
+        }
+    }
+}
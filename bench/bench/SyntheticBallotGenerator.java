@@ -0,0 +1,115 @@
+package bench;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+// Writes a ballot file in the format read by RCVBallotReader, with a controlled shape:
+// candidate popularity is skewed so that elections run for several rounds, each rank is left
+// blank with probability skipRate, and a marked rank gets a second mark with probability overvoteRate.
+// The same settings and seed always produce the same file.
+public class SyntheticBallotGenerator {
+
+    private static final String LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    private final int candidateCount;
+    private final int rankCount;
+    private final double skipRate;
+    private final double overvoteRate;
+    private final long seed;
+
+    public SyntheticBallotGenerator(int candidateCount, int rankCount, double skipRate, double overvoteRate, long seed) {
+        if (candidateCount < 2 || candidateCount > LETTERS.length()) {
+            throw new IllegalArgumentException("Between 2 and " + LETTERS.length() + " candidates are supported");
+        }
+        if (rankCount < 1 || rankCount > candidateCount) {
+            throw new IllegalArgumentException("Rank depth must be between 1 and the number of candidates");
+        }
+        if (skipRate < 0 || skipRate > 1 || overvoteRate < 0 || overvoteRate > 1) {
+            throw new IllegalArgumentException("Rates must be between 0 and 1");
+        }
+        this.candidateCount = candidateCount;
+        this.rankCount = rankCount;
+        this.skipRate = skipRate;
+        this.overvoteRate = overvoteRate;
+        this.seed = seed;
+    }
+
+    public void write(Path file, long ballotCount) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            write(out, ballotCount);
+        }
+    }
+
+    public void write(OutputStream out, long ballotCount) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        // Popularity falls off with the candidate's position, so first choices are uneven
+        double[] popularity = new double[candidateCount];
+        double popularityTotal = 0;
+        for (int c = 0; c < candidateCount; c++) {
+            popularity[c] = 1.0 / (c + 1);
+            popularityTotal += popularity[c];
+        }
+
+        // One reusable line per candidate: "X|" followed by "+ " or "- " per rank
+        byte[][] lines = new byte[candidateCount][];
+        for (int c = 0; c < candidateCount; c++) {
+            lines[c] = new byte[2 + rankCount * 2];
+            lines[c][0] = (byte) LETTERS.charAt(c);
+            lines[c][1] = '|';
+        }
+        byte[] end = {'E', 'N', 'D', '\n'};
+        int[] preference = new int[candidateCount];
+        double[] remaining = new double[candidateCount];
+
+        for (long b = 0; b < ballotCount; b++) {
+            for (byte[] line : lines) {
+                for (int r = 0; r < rankCount; r++) {
+                    line[2 + r * 2] = '-';
+                    line[3 + r * 2] = ' ';
+                }
+                line[line.length - 1] = '\n';
+            }
+            drawPreferences(random, popularity, popularityTotal, remaining, preference);
+            for (int r = 0; r < rankCount; r++) {
+                if (random.nextDouble() < skipRate) {
+                    continue;
+                }
+                lines[preference[r]][2 + r * 2] = '+';
+                if (random.nextDouble() < overvoteRate) {
+                    int other = random.nextInt(candidateCount - 1);
+                    lines[other >= preference[r] ? other + 1 : other][2 + r * 2] = '+';
+                }
+            }
+            for (byte[] line : lines) {
+                out.write(line);
+            }
+            out.write(end);
+        }
+    }
+
+    // Orders every candidate by weighted sampling without replacement
+    private void drawPreferences(SplittableRandom random, double[] popularity, double total,
+                                 double[] remaining, int[] preference) {
+        System.arraycopy(popularity, 0, remaining, 0, candidateCount);
+        for (int r = 0; r < rankCount; r++) {
+            double pick = random.nextDouble() * total;
+            int chosen = -1;
+            for (int c = 0; c < candidateCount; c++) {
+                if (remaining[c] > 0) {
+                    chosen = c;
+                    pick -= remaining[c];
+                    if (pick < 0) {
+                        break;
+                    }
+                }
+            }
+            preference[r] = chosen;
+            total -= remaining[chosen];
+            remaining[chosen] = 0;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+import service.TabulationService;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+
+// Tabulation over HTTP for dashboards, without the GUI:
+//     java ServeApp [--port P] [--ballot-dir <directory>] [--cache N] [--tabulations N]
+//                   [--max-upload BYTES] [--public]
+// Listens on the loopback interface only, unless --public is given.
+public class ServeApp {
+    public static void main(String[] args) {
+        int port = 8080;
+        String ballotDir = ".";
+        int cacheSize = 256;
+        int tabulations = 2;
+        long maxUpload = 1L << 30;
+        boolean listenEverywhere = false;
+        int i = 0;
+        try {
+            for (; i < args.length; i++) {
+                if (args[i].equals("--port") && i + 1 < args.length) {
+                    port = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--ballot-dir") && i + 1 < args.length) {
+                    ballotDir = args[++i];
+                } else if (args[i].equals("--cache") && i + 1 < args.length) {
+                    cacheSize = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--tabulations") && i + 1 < args.length) {
+                    tabulations = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--max-upload") && i + 1 < args.length) {
+                    maxUpload = Long.parseLong(args[++i]);
+                } else if (args[i].equals("--public")) {
+                    listenEverywhere = true;
+                } else {
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+                }
+            }
+        } catch (NumberFormatException badNumber) {
+            // i is at the value, just after its option
+            System.err.println(args[i - 1] + " needs a whole number, not " + args[i]);
+            System.exit(2);
+        }
+
+        try {
+            TabulationService service = new TabulationService(Paths.get(ballotDir), cacheSize);
+            service.setMaxConcurrentTabulations(tabulations);
+            service.setMaxUploadBytes(maxUpload);
+            InetSocketAddress address = service.start(listenEverywhere ? new InetSocketAddress(port)
+                    : new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            Runtime.getRuntime().addShutdownHook(new Thread(service::stop));
+            System.out.println("Serving tabulations of " + Paths.get(ballotDir).toAbsolutePath().normalize()
+                    + " on http://" + address.getHostString() + ":" + address.getPort() + "/tabulate");
+        } catch (Exception ex) {
+            System.err.println("Cannot start the service: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+import model.AuditListener;
+import model.AuditLogWriter;
+import model.AuditReportWriter;
+import model.BallotStore;
+import model.BatchTabulationEngine;
+import model.ExhaustionReason;
+import model.LiveTabulation;
+import model.LotDecision;
+import model.MonteCarloResult;
+import model.MonteCarloSimulator;
+import model.RCVBallotReader;
+import model.RoundResult;
+import model.StvEngine;
+import model.StvResult;
+import model.StvRound;
+import model.TabulationEngine;
+import model.TabulationMetrics;
+import model.TabulationResult;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Command-line tabulation without the GUI:
+//     java TabulateApp <ballot file> [--dedup] [--threads N] [--audit-log <csv file>] [--seed S]
+//                      [--off-heap] [--checkpoint <file>] [--cache] [--metrics <json file>]
+//                      [--monte-carlo TRIALS] [--follow SECONDS] [--contests] [--seats N]
+//                      [--batch-elimination] [--audit-report <file prefix>]
+public class TabulateApp {
+
+    // Options each of the other modes honours; any other option given with them is refused
+    private static final Map<String, Set<String>> MODE_OPTIONS = Map.of(
+            "--follow", Set.of("--seed"),
+            "--seats", Set.of("--threads", "--dedup", "--off-heap", "--seed"),
+            "--contests", Set.of("--threads", "--dedup", "--off-heap", "--seed"),
+            "--monte-carlo", Set.of("--threads", "--off-heap", "--cache", "--seed"));
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: java TabulateApp <ballot file> [--dedup] [--threads N] [--audit-log <csv file>] [--seed S] [--monte-carlo TRIALS] [--off-heap] [--checkpoint <file>] [--cache] [--metrics <json file>] [--follow SECONDS] [--contests] [--seats N] [--batch-elimination] [--audit-report <file prefix>]");
+            System.exit(2);
+        }
+        TabulationEngine engine = new TabulationEngine();
+        String auditLog = null;
+        String auditReport = null;
+        String metricsReport = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        int trials = 0;
+        boolean offHeap = false;
+        boolean cache = false;
+        int followSeconds = 0;
+        boolean contests = false;
+        int seats = 0;
+        boolean dedup = false;
+        Long contestSeed = null;
+        List<String> given = new ArrayList<>();
+        int i = 1;
+        try {
+            for (; i < args.length; i++) {
+                given.add(args[i]);
+                if (args[i].equals("--dedup")) {
+                    dedup = true;
+                    engine.setDeduplicateBallots(true);
+                } else if (args[i].equals("--batch-elimination")) {
+                    engine.setBatchElimination(true);
+                } else if (args[i].equals("--contests")) {
+                    contests = true;
+                } else if (args[i].equals("--seats") && i + 1 < args.length) {
+                    seats = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                    engine.setParallelism(threads);
+                } else if (args[i].equals("--off-heap")) {
+                    offHeap = true;
+                    engine.setOffHeapStorage(true);
+                } else if (args[i].equals("--follow") && i + 1 < args.length) {
+                    followSeconds = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--cache")) {
+                    cache = true;
+                    engine.setBallotCache(true);
+                } else if (args[i].equals("--checkpoint") && i + 1 < args.length) {
+                    engine.setCheckpointFile(Paths.get(args[++i]));
+                } else if (args[i].equals("--metrics") && i + 1 < args.length) {
+                    metricsReport = args[++i];
+                } else if (args[i].equals("--audit-log") && i + 1 < args.length) {
+                    auditLog = args[++i];
+                } else if (args[i].equals("--audit-report") && i + 1 < args.length) {
+                    auditReport = args[++i];
+                } else if (args[i].equals("--seed") && i + 1 < args.length) {
+                    seed = Long.parseLong(args[++i]);
+                    contestSeed = seed;
+                    engine.setSeed(seed);
+                } else if (args[i].equals("--monte-carlo") && i + 1 < args.length) {
+                    trials = Integer.parseInt(args[++i]);
+                } else {
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+                }
+            }
+        } catch (NumberFormatException badNumber) {
+            // i is at the value; the option is the last one recorded
+            System.err.println(given.get(given.size() - 1) + " needs a whole number, not " + args[i]);
+            System.exit(2);
+        }
+
+        String mode = followSeconds > 0 ? "--follow" : seats > 0 ? "--seats" : contests ? "--contests"
+                : trials > 0 ? "--monte-carlo" : null;
+        if (mode != null) {
+            for (String option : given) {
+                if (!option.equals(mode) && !MODE_OPTIONS.get(mode).contains(option)) {
+                    System.err.println(mode + " cannot be combined with " + option);
+                    System.exit(2);
+                }
+            }
+        }
+
+        // A resumed run would leave the rounds recorded before the interruption out of the audit trail
+        if (given.contains("--checkpoint")) {
+            for (String option : List.of("--audit-log", "--audit-report")) {
+                if (given.contains(option)) {
+                    System.err.println("--checkpoint cannot be combined with " + option);
+                    System.exit(2);
+                }
+            }
+        }
+
+        if (followSeconds > 0) {
+            follow(args[0], followSeconds, seed);
+            return;
+        }
+        if (seats > 0) {
+            StvEngine stv = new StvEngine(seats);
+            stv.setParallelism(threads);
+            stv.setDeduplicateBallots(dedup);
+            stv.setOffHeapStorage(offHeap);
+            stv.setSeed(contestSeed);
+            tabulateStv(stv, args[0]);
+            return;
+        }
+        if (contests) {
+            BatchTabulationEngine batch = new BatchTabulationEngine();
+            batch.setParallelism(threads);
+            batch.setDeduplicateBallots(dedup);
+            batch.setOffHeapStorage(offHeap);
+            batch.setSeed(contestSeed);
+            tabulateContests(batch, args[0]);
+            return;
+        }
+        if (trials > 0) {
+            runMonteCarlo(args[0], threads, offHeap, cache, trials, seed);
+            return;
+        }
+        try (AuditLogWriter auditWriter = auditLog == null ? null : new AuditLogWriter(Paths.get(auditLog));
+             AuditReportWriter reportWriter = auditReport == null ? null : AuditReportWriter.withPrefix(Paths.get(auditReport))) {
+            if (auditWriter != null && reportWriter != null) {
+                engine.setAuditListener(AuditListener.both(auditWriter, reportWriter));
+            } else {
+                engine.setAuditListener(auditWriter != null ? auditWriter : reportWriter);
+            }
+            TabulationMetrics metrics = metricsReport == null ? null : new TabulationMetrics();
+            engine.setMetrics(metrics);
+            TabulationResult result = engine.tabulate(Paths.get(args[0]));
+            if (metrics != null) {
+                metrics.writeReport(Paths.get(metricsReport));
+            }
+            for (RoundResult round : result.getRounds()) {
+                System.out.println("Round " + round.getRound() + ": " + round.getVoteCounts());
+                if (round.isBatchElimination()) {
+                    System.out.println("   eliminated as mathematically defeated: " + round.getEliminatedCandidates());
+                } else if (!round.getEliminatedCandidates().isEmpty()) {
+                    System.out.println("   eliminated: " + round.getEliminatedCandidates());
+                }
+                for (ExhaustionReason reason : ExhaustionReason.values()) {
+                    if (round.getExhausted(reason) > 0) {
+                        System.out.println("   exhausted " + round.getExhausted(reason) + " because " + reason.getDescription());
+                    }
+                }
+                for (LotDecision lot : round.getLotDecisions()) {
+                    System.out.println("   " + lot);
+                }
+            }
+            System.out.println("ballots: " + result.getBallotCount());
+            System.out.println("winning candidate: " + (result.getWinner() == null ? "none" : result.getWinner()));
+        } catch (Exception ex) {
+            System.err.println("Tabulation failed: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Multi-winner count: every round's votes, then the elected candidates in order
+    private static void tabulateStv(StvEngine stv, String ballotFile) {
+        try {
+            StvResult result = stv.tabulate(Paths.get(ballotFile));
+            System.out.printf("quota: %.5f%n", result.getQuota());
+            for (StvRound round : result.getRounds()) {
+                System.out.println("Round " + round.getRound() + ": " + round.getVoteCounts());
+                if (round.getSurplusTransferredFrom() != null) {
+                    System.out.printf("   surplus of %c transferred, %.5f lost to fractions%n",
+                            round.getSurplusTransferredFrom(), round.getLostToFractions());
+                }
+                if (!round.getEliminatedCandidates().isEmpty()) {
+                    System.out.println("   eliminated: " + round.getEliminatedCandidates());
+                }
+                if (!round.getElectedCandidates().isEmpty()) {
+                    System.out.println("   elected: " + round.getElectedCandidates());
+                }
+                for (LotDecision lot : round.getLotDecisions()) {
+                    System.out.println("   " + lot);
+                }
+            }
+            System.out.println("ballots: " + result.getBallotCount());
+            System.out.println("elected: " + result.getElected());
+        } catch (Exception ex) {
+            System.err.println("Tabulation failed: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // One line per contest of a multi-contest file, in file order
+    private static void tabulateContests(BatchTabulationEngine batch, String cvrFile) {
+        try {
+            for (Map.Entry<String, TabulationResult> contest : batch.tabulate(Paths.get(cvrFile)).entrySet()) {
+                TabulationResult result = contest.getValue();
+                System.out.println(contest.getKey() + ": " + result.getBallotCount() + " ballots, "
+                        + result.getRounds().size() + " rounds, winning candidate: "
+                        + (result.getWinner() == null ? "none" : result.getWinner()) + " (seed " + result.getSeed() + ")");
+            }
+        } catch (Exception ex) {
+            System.err.println("Tabulation failed: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Election-night mode: reads whatever was added to the file every few seconds and prints the
+    // first choices and the current result, until the process is stopped
+    private static void follow(String ballotFile, int seconds, long seed) {
+        LiveTabulation live = new LiveTabulation(seed);
+        try {
+            while (true) {
+                if (live.readNewBallots(Paths.get(ballotFile)) > 0) {
+                    TabulationResult result = live.tabulate();
+                    System.out.println(live.getBallotCount() + " ballots, first choices " + live.getFirstChoiceCounts()
+                            + ", " + result.getRounds().size() + " rounds, winning candidate: "
+                            + (result.getWinner() == null ? "none" : result.getWinner()));
+                }
+                Thread.sleep(seconds * 1000L);
+            }
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            System.err.println("Following " + ballotFile + " failed: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void runMonteCarlo(String ballotFile, int threads, boolean offHeap, boolean cache,
+                                      int trials, long seed) {
+        RCVBallotReader reader = new RCVBallotReader();
+        reader.setOffHeapStorage(offHeap);
+        reader.setBallotCache(cache);
+        try (BallotStore ballotStore = reader.loadBallots(Paths.get(ballotFile), threads)) {
+            MonteCarloResult result = new MonteCarloSimulator(threads).run(ballotStore, trials, seed);
+            System.out.println(trials + " trials, master seed " + result.getMasterSeed());
+            result.getWinProbabilities().forEach((candidate, probability) ->
+                    System.out.printf("%c wins %.4f%n", candidate, probability));
+            if (result.getTrialsWithoutWinner() > 0) {
+                System.out.println("no winner in " + result.getTrialsWithoutWinner() + " trials");
+            }
+        } catch (Exception ex) {
+            System.err.println("Monte Carlo run failed: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+}
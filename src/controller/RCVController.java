@@ -1,16 +1,28 @@
 //completed
 package controller;
 
+import model.LoadProgress;
 import model.RCVSimulator;
 import model.RCVBallotReader;
+import model.RoundResult;
 import view.RCVView;
 
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
 public class RCVController {
 
+    private static final int PROGRESS_REFRESH_MILLIS = 16; // about 60 updates a second
+
     // Provided instance variables
     private final RCVBallotReader reader;
     private final RCVView view;
     private final RCVSimulator sim;
+    // Additional variable declarations
+    private RoundWorker worker; // the rounds being counted, or null
 
     // Provided constructor
     public RCVController() {
@@ -19,7 +31,12 @@ public class RCVController {
         view = new RCVView(this);
     }
 
-    public String showResults(String fileNameFromUser) {
+    // Counts the next round, or every remaining round, on a background thread so the window
+    // stays responsive; each finished round is added to the view as soon as it is known
+    public void runRounds(String fileNameFromUser, boolean allRounds) {
+        if (worker != null) {
+            return; // still counting
+        }
         // True only when the fileNameFromUser equals the file name in the RCVBallotReader class.
         if (fileNameFromUser.equals(reader.getDataFileName())) {
             // True only when a winner is found
@@ -27,13 +44,24 @@ public class RCVController {
                 view.showMessage("Winner " + sim.getWinner()
                         + " already found");
                 System.exit(0); // program quits
-                return "";
             } else {
-                return sim.doOneRound();
+                worker = new RoundWorker(allRounds);
+                view.setBusy(true);
+                worker.execute();
             }
         } else {
             view.showMessage("Wrong file name; reread prompt and try again");
-            return "";
+        }
+    }
+
+    // Stops after the round being counted; a ballot load in progress is abandoned
+    public void cancel() {
+        if (worker != null) {
+            worker.cancelRequested = true;
+            LoadProgress loadProgress = sim.getLoadProgress();
+            if (loadProgress != null) {
+                loadProgress.cancel();
+            }
         }
     }
 
@@ -41,4 +69,69 @@ public class RCVController {
     public void showView() {
         view.displaySelf();
     }
-}
\ No newline at end of file
+
+    // Runs the simulator off the Event Dispatch Thread. Cancellation is a flag checked between
+    // rounds rather than SwingWorker.cancel, so a round that finishes is always shown.
+    private final class RoundWorker extends SwingWorker<Void, RoundResult> {
+        private final boolean allRounds;
+        private final Timer loadProgressTimer;
+        private volatile boolean cancelRequested;
+        private int roundsShown;
+
+        RoundWorker(boolean allRounds) {
+            this.allRounds = allRounds;
+            this.loadProgressTimer = new Timer(PROGRESS_REFRESH_MILLIS, (event) -> showLoadProgress());
+            if (sim.getCandidateCount() == 0) {
+                loadProgressTimer.start(); // the first round reads the ballots
+            }
+        }
+
+        @Override
+        protected Void doInBackground() {
+            do {
+                publish(sim.nextRound());
+            } while (allRounds && !sim.isFinished() && !cancelRequested);
+            return null;
+        }
+
+        @Override
+        protected void process(List<RoundResult> rounds) {
+            loadProgressTimer.stop();
+            for (RoundResult round : rounds) {
+                view.showRound(round);
+                roundsShown = round.getRound() + 1;
+            }
+            view.showRoundProgress(roundsShown, sim.getCandidateCount(), sim.getLoadProgress().getBallotsRead());
+        }
+
+        @Override
+        protected void done() {
+            loadProgressTimer.stop();
+            worker = null;
+            view.setBusy(false);
+            try {
+                get();
+                if (cancelRequested) {
+                    view.showStatus("Cancelled after round " + (roundsShown - 1));
+                }
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException failed) {
+                if (failed.getCause() instanceof CancellationException) {
+                    view.showStatus("Reading ballots cancelled");
+                } else {
+                    view.showStatus("");
+                    view.showMessage("Tabulation failed: " + failed.getCause().getMessage());
+                }
+            }
+        }
+
+        private void showLoadProgress() {
+            LoadProgress loadProgress = sim.getLoadProgress();
+            if (loadProgress != null) {
+                view.showLoadProgress(loadProgress.getBallotsRead(), loadProgress.getBytesRead(),
+                        loadProgress.getTotalBytes());
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package model;
+
+// Receives the audit events of a tabulation as they happen.
+// Callbacks run on the tabulating thread, in order, so implementations should return quickly;
+// every method does nothing by default.
+public interface AuditListener {
+
+    // Listener that ignores every event
+    AuditListener NONE = new AuditListener() {
+    };
+
+    // A ballot (or, in a deduplicated store, weight identical ballots) stopped counting
+    default void ballotExhausted(int round, int ballot, int weight, ExhaustionReason reason) {
+    }
+
+    // A candidate left the count with the given number of votes
+    default void candidateEliminated(int round, char candidate, int votes) {
+    }
+
+    // Ballots worth this many votes moved from an eliminated candidate to a continuing one; one
+    // call per pair after the round's eliminations and exhaustions
+    default void ballotsTransferred(int round, char from, char to, int votes) {
+    }
+
+    default void tieBrokenByLot(LotDecision decision) {
+    }
+
+    // A round is complete; called after every other event of the round
+    default void roundCompleted(RoundResult round) {
+    }
+
+    // Listener that passes every event to first, then to second
+    static AuditListener both(AuditListener first, AuditListener second) {
+        return new AuditListener() {
+            @Override
+            public void ballotExhausted(int round, int ballot, int weight, ExhaustionReason reason) {
+                first.ballotExhausted(round, ballot, weight, reason);
+                second.ballotExhausted(round, ballot, weight, reason);
+            }
+
+            @Override
+            public void candidateEliminated(int round, char candidate, int votes) {
+                first.candidateEliminated(round, candidate, votes);
+                second.candidateEliminated(round, candidate, votes);
+            }
+
+            @Override
+            public void ballotsTransferred(int round, char from, char to, int votes) {
+                first.ballotsTransferred(round, from, to, votes);
+                second.ballotsTransferred(round, from, to, votes);
+            }
+
+            @Override
+            public void tieBrokenByLot(LotDecision decision) {
+                first.tieBrokenByLot(decision);
+                second.tieBrokenByLot(decision);
+            }
+
+            @Override
+            public void roundCompleted(RoundResult round) {
+                first.roundCompleted(round);
+                second.roundCompleted(round);
+            }
+        };
+    }
+}
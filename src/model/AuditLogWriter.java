@@ -0,0 +1,157 @@
+package model;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// AuditListener that writes every event to a CSV file without slowing the tabulation down.
+// Events are packed as primitives into a batch on the tabulating thread; full batches are handed
+// to a background thread that formats and writes them. One writer serves one tabulation at a time.
+//     exhausted,<round>,<ballot>,<weight>,<reason>
+//     eliminated,<round>,<candidate>,<votes>
+//     lot,<round>,<selected>,<tied candidates>,<winner|elimination>
+public class AuditLogWriter implements AuditListener, Closeable {
+
+    private static final int BATCH_EVENTS = 8192;
+    private static final int QUEUED_BATCHES = 8; // the tabulation waits if the disk falls this far behind
+    private static final long EXHAUSTED = 0;
+    private static final long ELIMINATED = 1;
+    private static final long LOT = 2;
+    private static final Batch END_OF_LOG = new Batch();
+
+    private final BufferedWriter out;
+    private final BlockingQueue<Batch> queue;
+    private final Thread writerThread;
+    private volatile IOException failure;
+    private Batch batch;
+    private boolean closed;
+
+    public AuditLogWriter(Path logFile) throws IOException {
+        out = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8);
+        queue = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        batch = new Batch();
+        writerThread = new Thread(this::writeBatches, "audit-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public void ballotExhausted(int round, int ballot, int weight, ExhaustionReason reason) {
+        add(EXHAUSTED, round, ballot, ((long) weight << 8) | reason.ordinal());
+    }
+
+    @Override
+    public void candidateEliminated(int round, char candidate, int votes) {
+        add(ELIMINATED, round, candidate, votes);
+    }
+
+    @Override
+    public void tieBrokenByLot(LotDecision decision) {
+        batch.lots.add(decision);
+        add(LOT, decision.getRound(), batch.lots.size() - 1, 0);
+    }
+
+    // Flushes the pending events and waits until everything is on disk
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(batch);
+            queue.put(END_OF_LOG);
+            writerThread.join();
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the audit log");
+        } finally {
+            out.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void add(long type, long round, long a, long b) {
+        if (closed) {
+            throw new IllegalStateException("Audit log is closed");
+        }
+        long[] events = batch.events;
+        int i = batch.size * 4;
+        events[i] = type;
+        events[i + 1] = round;
+        events[i + 2] = a;
+        events[i + 3] = b;
+        if (++batch.size == BATCH_EVENTS) {
+            try {
+                queue.put(batch);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while writing the audit log", interrupted);
+            }
+            batch = new Batch();
+        }
+    }
+
+    // Runs on the background thread until END_OF_LOG arrives
+    private void writeBatches() {
+        StringBuilder line = new StringBuilder(128);
+        ExhaustionReason[] reasons = ExhaustionReason.values();
+        try {
+            for (Batch next = queue.take(); next != END_OF_LOG; next = queue.take()) {
+                if (failure != null) {
+                    continue; // keep draining so the tabulation never blocks
+                }
+                long[] events = next.events;
+                for (int i = 0; i < next.size * 4; i += 4) {
+                    line.setLength(0);
+                    long type = events[i];
+                    if (type == EXHAUSTED) {
+                        line.append("exhausted,").append(events[i + 1]).append(',').append(events[i + 2])
+                                .append(',').append(events[i + 3] >>> 8)
+                                .append(',').append(reasons[(int) (events[i + 3] & 0xFF)]);
+                    } else if (type == ELIMINATED) {
+                        line.append("eliminated,").append(events[i + 1]).append(',').append((char) events[i + 2])
+                                .append(',').append(events[i + 3]);
+                    } else {
+                        LotDecision lot = next.lots.get((int) events[i + 2]);
+                        line.append("lot,").append(events[i + 1]).append(',').append(lot.getSelected()).append(',');
+                        for (char tied : lot.getTiedCandidates()) {
+                            line.append(tied);
+                        }
+                        line.append(',').append(lot.isForWinner() ? "winner" : "elimination");
+                    }
+                    line.append('\n');
+                    try {
+                        out.append(line);
+                    } catch (IOException ioEx) {
+                        failure = ioEx;
+                        break;
+                    }
+                }
+            }
+            out.flush();
+        } catch (IOException ioEx) {
+            if (failure == null) {
+                failure = ioEx;
+            }
+        } catch (InterruptedException interrupted) {
+            failure = new InterruptedIOException("Audit log writer interrupted");
+        }
+    }
+
+    private static class Batch {
+        private final long[] events = new long[BATCH_EVENTS * 4];
+        private final List<LotDecision> lots = new ArrayList<>();
+        private int size;
+    }
+}
@@ -0,0 +1,302 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+// AuditListener that streams the audit trail for certification while the tabulation runs.
+// Every completed round is appended to a CSV and a JSON report, and every exhausted ballot to
+// an exhaustion log; each file is written through a fixed-size buffer on a FileChannel, so
+// memory does not grow with the number of ballots or rounds. Any of the files may be left out.
+// CSV report, one row per fact:
+//     votes,<round>,<candidate>,<votes>
+//     eliminated,<round>,<candidate>,<votes>
+//     transfer,<round>,<eliminated candidate>,<recipient>,<votes>
+//     exhausted,<round>,<reason>,<ballots>
+//     lot,<round>,<selected>,<tied candidates>,<winner|elimination>
+//     threshold,<round>,<votes needed to win>
+//     winner,<round>,<candidate>
+// JSON report: {"rounds":[{<round as in TabulationResult.toJson>,"transfers":[{"from":..,"to":..,"votes":..}]}],"winner":..}
+// Exhaustion log: round,ballot,weight,reason
+// Transfers are the votes the tabulation moved from each eliminated candidate's ballots to each
+// recipient (see AuditListener.ballotsTransferred). At the first elimination, overvoted ballots
+// that round 0 counted for every candidate they mark are settled by the recount, and show up as
+// exhaustions rather than transfers.
+public class AuditReportWriter implements AuditListener, Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReportChannel csv;
+    private final ReportChannel json;
+    private final ReportChannel exhaustionLog;
+    private final int[] eliminatedVotes = new int[256]; // by candidate letter, for the round in progress
+    // Transfers of the round in progress, packed as from << 40 | to << 32 | votes; at most one
+    // per pair of candidates
+    private long[] transfers = new long[64];
+    private int transferCount;
+    private final StringBuilder line = new StringBuilder(1024);
+    private final String[] reasonNames;
+    private boolean firstRound = true;
+    private Character winner;
+    private boolean closed;
+
+    public AuditReportWriter(Path csvReport, Path jsonReport, Path exhaustionLog) throws IOException {
+        this.reasonNames = new String[ExhaustionReason.values().length];
+        for (ExhaustionReason reason : ExhaustionReason.values()) {
+            reasonNames[reason.ordinal()] = reason.name();
+        }
+        ReportChannel csvChannel = null;
+        ReportChannel jsonChannel = null;
+        try {
+            csvChannel = csvReport == null ? null : new ReportChannel(csvReport);
+            jsonChannel = jsonReport == null ? null : new ReportChannel(jsonReport);
+            this.exhaustionLog = exhaustionLog == null ? null : new ReportChannel(exhaustionLog);
+        } catch (IOException failed) {
+            closeQuietly(csvChannel);
+            closeQuietly(jsonChannel);
+            throw failed;
+        }
+        this.csv = csvChannel;
+        this.json = jsonChannel;
+        if (this.exhaustionLog != null) {
+            this.exhaustionLog.put("round,ballot,weight,reason\n");
+        }
+        if (json != null) {
+            json.put("{\"rounds\":[");
+        }
+    }
+
+    // Report files <prefix>.csv and <prefix>.json, and exhaustion log <prefix>-exhausted.csv
+    public static AuditReportWriter withPrefix(Path prefix) throws IOException {
+        String name = prefix.getFileName().toString();
+        return new AuditReportWriter(prefix.resolveSibling(name + ".csv"), prefix.resolveSibling(name + ".json"),
+                prefix.resolveSibling(name + "-exhausted.csv"));
+    }
+
+    @Override
+    public void ballotExhausted(int round, int ballot, int weight, ExhaustionReason reason) {
+        if (exhaustionLog == null) {
+            return;
+        }
+        try {
+            exhaustionLog.put(round).put(',').put(ballot).put(',').put(weight).put(',')
+                    .put(reasonNames[reason.ordinal()]).put('\n');
+        } catch (IOException ioEx) {
+            throw new UncheckedIOException("Cannot write the exhaustion log", ioEx);
+        }
+    }
+
+    @Override
+    public void candidateEliminated(int round, char candidate, int votes) {
+        eliminatedVotes[candidate & 0xFF] = votes;
+    }
+
+    @Override
+    public void ballotsTransferred(int round, char from, char to, int votes) {
+        if (transferCount == transfers.length) {
+            transfers = Arrays.copyOf(transfers, transfers.length * 2);
+        }
+        transfers[transferCount++] = (long) (from & 0xFF) << 40 | (long) (to & 0xFF) << 32 | votes;
+    }
+
+    @Override
+    public void roundCompleted(RoundResult round) {
+        if (closed) {
+            throw new IllegalStateException("Audit report is closed");
+        }
+        try {
+            if (csv != null) {
+                writeCsv(round);
+                csv.flush();
+            }
+            if (json != null) {
+                writeJson(round);
+                json.flush();
+            }
+            if (exhaustionLog != null) {
+                exhaustionLog.flush();
+            }
+        } catch (IOException ioEx) {
+            throw new UncheckedIOException("Cannot write the audit report", ioEx);
+        }
+        transferCount = 0;
+        winner = round.getWinner();
+        firstRound = false;
+    }
+
+    // Finishes the JSON document and closes every file
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        IOException failure = null;
+        if (json != null) {
+            line.setLength(0);
+            line.append("],\"winner\":");
+            RoundResult.appendCandidate(line, winner);
+            line.append("}\n");
+            failure = closeAfter(json, line);
+        }
+        for (ReportChannel channel : new ReportChannel[] {csv, exhaustionLog}) {
+            IOException failed = closeAfter(channel, null);
+            failure = failure == null ? failed : failure;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void writeCsv(RoundResult round) throws IOException {
+        int r = round.getRound();
+        for (Character candidate : round.getEliminatedCandidates()) {
+            csv.put("eliminated,").put(r).put(',').put(candidate).put(',').put(eliminatedVotes[candidate & 0xFF]).put('\n');
+        }
+        for (int i = 0; i < transferCount; i++) {
+            csv.put("transfer,").put(r).put(',').put(from(transfers[i])).put(',').put(to(transfers[i])).put(',')
+                    .put((int) transfers[i]).put('\n');
+        }
+        for (ExhaustionReason reason : ExhaustionReason.values()) {
+            csv.put("exhausted,").put(r).put(',').put(reasonNames[reason.ordinal()]).put(',')
+                    .put(round.getExhausted(reason)).put('\n');
+        }
+        for (LotDecision lot : round.getLotDecisions()) {
+            csv.put("lot,").put(r).put(',').put(lot.getSelected()).put(',');
+            for (char tied : lot.getTiedCandidates()) {
+                csv.put(tied);
+            }
+            csv.put(lot.isForWinner() ? ",winner\n" : ",elimination\n");
+        }
+        for (Map.Entry<Character, Integer> votes : round.getVoteCounts().entrySet()) {
+            csv.put("votes,").put(r).put(',').put(votes.getKey()).put(',').put(votes.getValue()).put('\n');
+        }
+        csv.put("threshold,").put(r).put(',').put(round.getVotesNeededToWin()).put('\n');
+        if (round.getWinner() != null) {
+            csv.put("winner,").put(r).put(',').put(round.getWinner()).put('\n');
+        }
+    }
+
+    private void writeJson(RoundResult round) throws IOException {
+        line.setLength(0);
+        line.append(firstRound ? "\n{" : ",\n{");
+        round.appendJson(line);
+        line.append(",\"transfers\":[");
+        for (int i = 0; i < transferCount; i++) {
+            line.append(i == 0 ? "{\"from\":" : ",{\"from\":");
+            RoundResult.appendCandidate(line, from(transfers[i]));
+            line.append(",\"to\":");
+            RoundResult.appendCandidate(line, to(transfers[i]));
+            line.append(",\"votes\":").append((int) transfers[i]).append('}');
+        }
+        line.append("]}");
+        json.put(line);
+    }
+
+    private static char from(long transfer) {
+        return (char) ((transfer >>> 40) & 0xFF);
+    }
+
+    private static char to(long transfer) {
+        return (char) ((transfer >>> 32) & 0xFF);
+    }
+
+    private static IOException closeAfter(ReportChannel channel, CharSequence tail) {
+        if (channel == null) {
+            return null;
+        }
+        try {
+            if (tail != null) {
+                channel.put(tail);
+            }
+            channel.close();
+            return null;
+        } catch (IOException failed) {
+            closeQuietly(channel);
+            return failed;
+        }
+    }
+
+    private static void closeQuietly(ReportChannel channel) {
+        if (channel != null) {
+            try {
+                channel.channel.close();
+            } catch (IOException ignored) {
+                // Already failing; the first error is the one reported
+            }
+        }
+    }
+
+    // ASCII text into a fixed buffer, written to the file whenever it fills up. Candidate letters
+    // are single bytes, so every character written here fits in one byte.
+    private static final class ReportChannel {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final byte[] digits = new byte[20];
+
+        ReportChannel(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        ReportChannel put(char c) throws IOException {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) c);
+            return this;
+        }
+
+        ReportChannel put(CharSequence text) throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                put(text.charAt(i));
+            }
+            return this;
+        }
+
+        ReportChannel put(long value) throws IOException {
+            if (buffer.remaining() < digits.length + 1) {
+                drain();
+            }
+            if (value < 0) {
+                buffer.put((byte) '-');
+                value = -value; // counts never reach Long.MIN_VALUE
+            }
+            int n = 0;
+            do {
+                digits[n++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            while (n > 0) {
+                buffer.put(digits[--n]);
+            }
+            return this;
+        }
+
+        void flush() throws IOException {
+            drain();
+        }
+
+        void close() throws IOException {
+            try {
+                drain();
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package model;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
+// Compiled copy of a ballot file, kept next to it as <file>.rcvcache, so later loads skip
+// the text parsing and read the packed ballots straight from a memory mapping.
+//     header   magic, source size, source content hash, candidates, rank count,
+//              entry count, overvote count
+//     body     the store's packed rank bytes and overvote table (see BallotStore.writePacked)
+// The cache is keyed by the size and content hash of the source file: any change to the
+// source makes the cached copy stale, and it is rebuilt on the next load. The hash runs over
+// 64 MB blocks on several threads; it is much cheaper than decoding the text.
+class BallotCache {
+
+    static final String SUFFIX = ".rcvcache";
+    private static final long MAGIC = 0x5243_5642_4341_4301L; // "RCVBCAC" and format version 1
+    private static final int HASH_BLOCK = 1 << 26;
+
+    private final int parallelism;
+
+    BallotCache(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    static Path sidecarOf(Path source) {
+        return source.resolveSibling(source.getFileName() + SUFFIX);
+    }
+
+    // Size and content hash of the source, the key of its cached copy
+    long[] key(Path source) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int blocks = (int) ((size + HASH_BLOCK - 1) / HASH_BLOCK);
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int b = 0; b < blocks; b++) {
+                long start = (long) b * HASH_BLOCK;
+                tasks.add(() -> blockChecksum(channel, start, Math.min(HASH_BLOCK, size - start)));
+            }
+            long hash = size;
+            try (ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, Math.max(1, blocks)))) {
+                for (Future<Integer> block : pool.invokeAll(tasks)) {
+                    hash = (hash ^ (block.get() & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L;
+                    hash ^= hash >>> 32;
+                }
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while hashing " + source);
+            } catch (ExecutionException failed) {
+                if (failed.getCause() instanceof IOException) {
+                    throw (IOException) failed.getCause();
+                }
+                throw new IOException(failed.getCause());
+            }
+            return new long[] {size, hash};
+        }
+    }
+
+    private static int blockChecksum(FileChannel channel, long start, long length) throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+        return (int) crc.getValue();
+    }
+
+    // The cached ballots of source, or null when there is no cached copy for its current contents
+    BallotStore load(Path source, long[] key, boolean offHeap) throws IOException {
+        Path sidecar = sidecarOf(source);
+        if (!Files.isRegularFile(sidecar)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.READ)) {
+            ByteBuffer fixed = readFully(channel, 0, 8 + 8 + 8 + 4);
+            if (fixed == null || fixed.getLong() != MAGIC || fixed.getLong() != key[0] || fixed.getLong() != key[1]) {
+                return null;
+            }
+            int candidateCount = fixed.getInt();
+            if (candidateCount < 1 || candidateCount > BallotStore.MAX_CANDIDATES) {
+                return null;
+            }
+            ByteBuffer rest = readFully(channel, fixed.capacity(), candidateCount * 2 + 4 + 4 + 4);
+            if (rest == null) {
+                return null;
+            }
+            char[] candidates = new char[candidateCount];
+            for (int c = 0; c < candidateCount; c++) {
+                candidates[c] = rest.getChar();
+            }
+            int rankCount = rest.getInt();
+            int size = rest.getInt();
+            int overvoteCount = rest.getInt();
+            long body = fixed.capacity() + rest.capacity();
+            if (rankCount < 1 || size < 0 || overvoteCount < 0
+                    || channel.size() != body + (long) size * rankCount + overvoteCount * 16L) {
+                return null; // not a complete cache file
+            }
+            return BallotStore.readPacked(candidates, rankCount, size, overvoteCount, channel, body, offHeap);
+        }
+    }
+
+    // Writes the cached copy; it replaces any older copy in one step, so a reader never sees
+    // a half-written file
+    void store(Path source, long[] key, BallotStore ballotStore) throws IOException {
+        Path sidecar = sidecarOf(source);
+        Path partial = Files.createTempFile(sidecar.toAbsolutePath().getParent(), sidecar.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+                char[] candidates = ballotStore.candidates();
+                ByteBuffer header = ByteBuffer.allocate(8 + 8 + 8 + 4 + candidates.length * 2 + 4 + 4 + 4);
+                header.putLong(MAGIC).putLong(key[0]).putLong(key[1]).putInt(candidates.length);
+                for (char candidate : candidates) {
+                    header.putChar(candidate);
+                }
+                header.putInt(ballotStore.rankCount()).putInt(ballotStore.size()).putInt(ballotStore.overvoteCount());
+                header.flip();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                ballotStore.writePacked(channel);
+                channel.force(false);
+            }
+            Files.move(partial, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        return buffer.flip();
+    }
+}
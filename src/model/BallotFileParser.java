@@ -0,0 +1,269 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Streaming decoder for the ballot file grammar:
+//     O|+ - - -      one line per candidate, one token per rank ('+' marks a vote)
+//     END            closes the ballot
+// The file is memory-mapped window by window and decoded byte by byte, without creating
+// any intermediate Strings; every complete ballot is handed to a BallotSink.
+// A parser can also decode just a byte range of the file (see ParallelBallotLoader), in which
+// case the candidate dictionary from the first ballot is given up front, or be fed one line at
+// a time by a MultiContestReader.
+public class BallotFileParser {
+
+    private static final long MAP_WINDOW = 1L << 28; // 256 MB per mapping
+    private static final int PROGRESS_INTERVAL = 4096; // ballots between progress reports
+    private static final byte VOTE = '+';
+    private static final byte SEPARATOR = '|';
+    private static final byte[] END = {'E', 'N', 'D'};
+
+    // Decoder states
+    private static final int LINE_START = 0;
+    private static final int AFTER_KEY = 1;
+    private static final int MARKS = 2;
+
+    private final BallotSink sink;
+    private final int[] indexOfLetter; // candidate index by letter byte, -1 if unknown
+    private int rankCount;
+    private long[] rankMasks;
+    private boolean dictionaryKnown;
+
+    // Only used while decoding the first ballot, before the dictionary is known
+    private char[] firstLetters;
+    private int firstLetterCount;
+
+    private int state;
+    private byte key;
+    private int endMatched; // how many bytes of "END" the current line has matched, -1 once it cannot be END
+    private long currentBit;
+    private int rank;
+    private boolean inToken;
+    private long lineNumber; // 0 when decoding a range that does not start the file
+    private long rangeStart;
+    private long windowStart;
+    private long endOfLastBallot; // file offset just past the last complete ballot
+    private long ballotCount;
+    private LoadProgress progress; // null when nobody is watching
+    private long reportedOffset;
+    private long reportedBallots;
+
+    public BallotFileParser(BallotSink sink) {
+        this.sink = sink;
+        this.indexOfLetter = new int[256];
+        Arrays.fill(indexOfLetter, -1);
+        this.rankMasks = new long[8];
+        this.firstLetters = new char[BallotStore.MAX_CANDIDATES];
+        this.state = LINE_START;
+        this.lineNumber = 1;
+    }
+
+    // Parser for a range of the file after the first ballot, with an already known dictionary
+    public BallotFileParser(BallotSink sink, char[] candidates, int rankCount) {
+        this(sink);
+        for (int i = 0; i < candidates.length; i++) {
+            indexOfLetter[candidates[i] & 0xFF] = i;
+        }
+        this.rankCount = rankCount;
+        this.rankMasks = new long[rankCount];
+        this.firstLetters = null;
+        this.dictionaryKnown = true;
+        this.lineNumber = 0;
+    }
+
+    // Reports the bytes and ballots decoded every few thousand ballots, and stops when the
+    // progress is cancelled
+    public void setProgress(LoadProgress progress) {
+        this.progress = progress;
+    }
+
+    public long getBallotCount() {
+        return ballotCount;
+    }
+
+    // File offset just past the END line of the last ballot decoded, or the start of the range
+    // when none was; a file that is still being written can be read on from here later
+    public long getEndOfLastBallot() {
+        return endOfLastBallot;
+    }
+
+    // Decodes the whole file; a trailing ballot without END is ignored
+    public void parse(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            parse(channel, 0, channel.size());
+        }
+    }
+
+    // Decodes the bytes in [start, end); the range must begin at the start of a line
+    public void parse(FileChannel channel, long start, long end) throws IOException {
+        rangeStart = start;
+        endOfLastBallot = start;
+        reportedOffset = start;
+        for (long window = start; window < end; window += MAP_WINDOW) {
+            windowStart = window;
+            decode(channel.map(FileChannel.MapMode.READ_ONLY, window, Math.min(MAP_WINDOW, end - window)));
+        }
+        finish(end);
+    }
+
+    // Decodes the bytes up to the buffer's limit, carrying on from where the last call stopped
+    void decode(ByteBuffer buffer) {
+        int limit = buffer.limit();
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            switch (state) {
+                case LINE_START:
+                    if (b == '\n') {
+                        newLine();
+                    } else if (!isBlank(b)) {
+                        key = b;
+                        endMatched = b == END[0] ? 1 : -1;
+                        state = AFTER_KEY;
+                    }
+                    break;
+                case AFTER_KEY:
+                    if (b == SEPARATOR) {
+                        startCandidateLine();
+                        state = MARKS;
+                    } else if (b == '\n') {
+                        endLineWithoutSeparator(windowStart + i + 1);
+                        newLine();
+                        state = LINE_START;
+                    } else if (!isBlank(b)) {
+                        endMatched = endMatched >= 0 && endMatched < END.length && b == END[endMatched]
+                                ? endMatched + 1 : -1;
+                    }
+                    break;
+                default: // MARKS
+                    if (b == '\n') {
+                        newLine();
+                        state = LINE_START;
+                    } else if (isBlank(b)) {
+                        inToken = false;
+                    } else if (!inToken) {
+                        inToken = true;
+                        mark(b == VOTE);
+                    }
+                    break;
+            }
+        }
+    }
+
+    // Line number of the file for the next line decoded, when the lines arrive one by one
+    void setLineNumber(long lineNumber) {
+        this.lineNumber = lineNumber;
+    }
+
+    private void newLine() {
+        if (lineNumber > 0) {
+            lineNumber++;
+        }
+    }
+
+    private void finish(long end) {
+        // The last END may not be followed by a newline
+        if (state == AFTER_KEY) {
+            endLineWithoutSeparator(end);
+        }
+        state = LINE_START;
+        if (progress != null) {
+            progress.advance(end - reportedOffset, ballotCount - reportedBallots);
+            reportedOffset = end;
+            reportedBallots = ballotCount;
+        }
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private void startCandidateLine() {
+        rank = 0;
+        inToken = false;
+        if (dictionaryKnown) {
+            int index = indexOfLetter[key & 0xFF];
+            if (index < 0) {
+                throw error("Unknown candidate " + (char) (key & 0xFF));
+            }
+            currentBit = 1L << index;
+        } else {
+            // Provisional index in order of appearance; remapped once the first ballot is complete
+            if (firstLetterCount == BallotStore.MAX_CANDIDATES) {
+                throw error("More than " + BallotStore.MAX_CANDIDATES + " candidates");
+            }
+            firstLetters[firstLetterCount] = (char) (key & 0xFF);
+            currentBit = 1L << firstLetterCount;
+            firstLetterCount++;
+        }
+    }
+
+    private void mark(boolean vote) {
+        if (rank >= rankMasks.length) {
+            if (dictionaryKnown) {
+                throw error("More than " + rankCount + " rankings for candidate " + (char) (key & 0xFF));
+            }
+            rankMasks = Arrays.copyOf(rankMasks, rankMasks.length * 2);
+        }
+        if (vote) {
+            rankMasks[rank] |= currentBit;
+        }
+        rank++;
+        if (!dictionaryKnown && rank > rankCount) {
+            rankCount = rank;
+        }
+    }
+
+    private void endLineWithoutSeparator(long lineEnd) {
+        if (endMatched != END.length) {
+            throw error("Expected '|' or END");
+        }
+        endOfLastBallot = lineEnd;
+        if (!dictionaryKnown) {
+            defineDictionary();
+        }
+        sink.accept(rankMasks);
+        ballotCount++;
+        Arrays.fill(rankMasks, 0L);
+        if (progress != null && ballotCount - reportedBallots == PROGRESS_INTERVAL) {
+            progress.advance(lineEnd - reportedOffset, PROGRESS_INTERVAL);
+            reportedOffset = lineEnd;
+            reportedBallots = ballotCount;
+        }
+    }
+
+    // Sorts the first ballot's letters into the candidate dictionary and remaps its marks
+    private void defineDictionary() {
+        if (firstLetterCount == 0 || rankCount == 0) {
+            throw error("First ballot lists no candidates");
+        }
+        char[] sorted = Arrays.copyOf(firstLetters, firstLetterCount);
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            indexOfLetter[sorted[i] & 0xFF] = i;
+        }
+        long[] remapped = new long[rankCount];
+        for (int r = 0; r < rankCount; r++) {
+            long marks = rankMasks[r];
+            while (marks != 0) {
+                int provisional = Long.numberOfTrailingZeros(marks);
+                remapped[r] |= 1L << indexOfLetter[firstLetters[provisional] & 0xFF];
+                marks &= marks - 1;
+            }
+        }
+        rankMasks = remapped;
+        firstLetters = null;
+        dictionaryKnown = true;
+        sink.start(sorted, rankCount);
+    }
+
+    private IllegalArgumentException error(String message) {
+        String where = lineNumber > 0 ? "line " + lineNumber + ", ballot " + (ballotCount + 1)
+                : "ballot " + (ballotCount + 1) + " of the range starting at byte " + rangeStart;
+        return new IllegalArgumentException(message + " (" + where + ")");
+    }
+}
@@ -0,0 +1,55 @@
+package model;
+
+import java.util.Arrays;
+
+// Growable list of ballot indices currently counted for one candidate.
+// A pile marked shared belongs to more than one tabulation and must be copied before it changes.
+class BallotPile {
+
+    private int[] ballots;
+    private int size;
+    private boolean shared;
+
+    BallotPile() {
+        ballots = new int[64];
+    }
+
+    void add(int ballot) {
+        if (size == ballots.length) {
+            ballots = Arrays.copyOf(ballots, size * 2);
+        }
+        ballots[size++] = ballot;
+    }
+
+    void addAll(BallotPile other) {
+        if (size + other.size > ballots.length) {
+            ballots = Arrays.copyOf(ballots, Math.max(size + other.size, size * 2));
+        }
+        System.arraycopy(other.ballots, 0, ballots, size, other.size);
+        size += other.size;
+    }
+
+    int get(int index) {
+        return ballots[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isShared() {
+        return shared;
+    }
+
+    void markShared() {
+        shared = true;
+    }
+
+    // Private, writable copy of a shared pile
+    BallotPile copy() {
+        BallotPile copy = new BallotPile();
+        copy.ballots = Arrays.copyOf(ballots, Math.max(size + size / 4, 64));
+        copy.size = size;
+        return copy;
+    }
+}
@@ -0,0 +1,13 @@
+package model;
+
+// Receives ballots one at a time as they are decoded, so callers never need the whole file in memory
+public interface BallotSink {
+
+    // Called once, before the first ballot, with the candidate letters sorted
+    // (a candidate's index is its position in this array) and the number of rankings
+    void start(char[] candidates, int rankCount);
+
+    // Called once per ballot with one candidate bitmask per rank.
+    // The array is reused for the next ballot, so copy anything that must be kept.
+    void accept(long[] rankMasks);
+}
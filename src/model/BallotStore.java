@@ -0,0 +1,394 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+// Compact, columnar storage for every ballot of one contest.
+// Each ballot is packed into one byte per rank holding the index of the candidate
+// marked at that rank (or NO_MARK / OVERVOTE); the rare ranks carrying more than one
+// mark keep their full candidate set in a small side table.
+// A deduplicated store holds each distinct ranking pattern once, with a weight giving the
+// number of ballots that share it.
+// The rank bytes live on the Java heap by default; an off-heap store keeps them in a
+// memory-mapped scratch file instead and must be closed to give that file back.
+public class BallotStore implements AutoCloseable {
+
+    public static final int MAX_CANDIDATES = 64; // candidate sets are held in a long bitmask
+    static final byte NO_MARK = -1;
+    static final byte OVERVOTE = -2;
+
+    private final char[] candidates; // candidate-index dictionary, sorted by letter
+    private final int rankCount;
+    private final boolean offHeap;
+    private final RankStorage ranks;
+    private int size;
+    // Side table for overvoted ranks: packed position (ballot * rankCount + rank) -> candidate mask
+    private long[] overvotePositions;
+    private long[] overvoteMasks;
+    private int overvoteCount;
+    private int[] weights; // null while every entry stands for exactly one ballot
+    private boolean sealed;
+
+    public BallotStore(char[] candidateLetters, int rankCount) {
+        this(candidateLetters, rankCount, false);
+    }
+
+    public BallotStore(char[] candidateLetters, int rankCount, boolean offHeap) {
+        if (candidateLetters.length == 0 || candidateLetters.length > MAX_CANDIDATES) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_CANDIDATES
+                    + " candidates are supported, got " + candidateLetters.length);
+        }
+        if (rankCount < 1 || rankCount > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Unsupported number of rankings: " + rankCount);
+        }
+        this.candidates = candidateLetters.clone();
+        Arrays.sort(this.candidates);
+        this.rankCount = rankCount;
+        this.offHeap = offHeap;
+        this.ranks = offHeap ? new MappedRankStorage(rankCount) : new HeapRankStorage(rankCount);
+        this.overvotePositions = new long[16];
+        this.overvoteMasks = new long[16];
+    }
+
+    // Number of entries: ballots, or distinct ranking patterns once deduplicated
+    public int size() {
+        return size;
+    }
+
+    // Number of physical ballots an entry stands for
+    public int weight(int ballot) {
+        return weights == null ? 1 : weights[ballot];
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public boolean isWeighted() {
+        return weights != null;
+    }
+
+    // Number of physical ballots in the store
+    public long ballotCount() {
+        if (weights == null) {
+            return size;
+        }
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += weights[i];
+        }
+        return total;
+    }
+
+    public int candidateCount() {
+        return candidates.length;
+    }
+
+    public int rankCount() {
+        return rankCount;
+    }
+
+    public char candidate(int index) {
+        return candidates[index];
+    }
+
+    public char[] candidates() {
+        return candidates.clone();
+    }
+
+    // Returns -1 when the letter is not a candidate of this contest
+    public int indexOf(char candidate) {
+        int index = Arrays.binarySearch(candidates, candidate);
+        return index < 0 ? -1 : index;
+    }
+
+    // Makes the store read-only, so that any number of threads can tabulate it at once
+    // (see ScenarioSweep); adding ballots afterwards throws IllegalStateException
+    public void seal() {
+        sealed = true;
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    // Appends one ballot given as a candidate bitmask per rank
+    public void add(long[] rankMasks) {
+        checkNotSealed();
+        if (rankMasks.length < rankCount) {
+            throw new IllegalArgumentException("Ballot needs " + rankCount + " rankings");
+        }
+        if (size == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many ballots for one store");
+        }
+        ranks.reserve(size + 1);
+        long offset = (long) size * rankCount;
+        for (int rank = 0; rank < rankCount; rank++) {
+            long mask = rankMasks[rank];
+            if (mask == 0) {
+                ranks.set(size, rank, NO_MARK);
+            } else if (Long.bitCount(mask) == 1) {
+                ranks.set(size, rank, (byte) Long.numberOfTrailingZeros(mask));
+            } else {
+                ranks.set(size, rank, OVERVOTE);
+                addOvervote(offset + rank, mask);
+            }
+        }
+        if (weights != null) {
+            if (size == weights.length) {
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            weights[size] = 1;
+        }
+        size++;
+    }
+
+    // Appends every ballot of another store over the same candidates, keeping their order
+    public void addAll(BallotStore other) {
+        checkNotSealed();
+        if (!Arrays.equals(candidates, other.candidates) || rankCount != other.rankCount) {
+            throw new IllegalArgumentException("Ballot stores cover different candidates or rankings");
+        }
+        if ((long) size + other.size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many ballots for one store");
+        }
+        ranks.reserve(size + other.size);
+        ranks.copy(other.ranks, other.size, size, rankCount);
+        long offset = (long) size * rankCount;
+        for (int i = 0; i < other.overvoteCount; i++) {
+            addOvervote(offset + other.overvotePositions[i], other.overvoteMasks[i]);
+        }
+        if (weights != null || other.weights != null) {
+            int[] merged = new int[Math.max(size + other.size, 16)];
+            for (int i = 0; i < size; i++) {
+                merged[i] = weight(i);
+            }
+            for (int i = 0; i < other.size; i++) {
+                merged[size + i] = other.weight(i);
+            }
+            weights = merged;
+        }
+        size += other.size;
+    }
+
+    private void checkNotSealed() {
+        if (sealed) {
+            throw new IllegalStateException("Ballot store is sealed");
+        }
+    }
+
+    // Groups identical ballots: returns a store holding each distinct ranking pattern once,
+    // in order of first appearance, weighted by the number of ballots that share it
+    public BallotStore deduplicate() {
+        BallotStore unique = new BallotStore(candidates, rankCount, offHeap);
+        unique.weights = new int[16];
+        int[] table = new int[1024]; // open addressing over entries of unique, -1 when empty
+        Arrays.fill(table, -1);
+        long[] rankMasks = new long[rankCount];
+        for (int ballot = 0; ballot < size; ballot++) {
+            int slot = hash(ballot) & (table.length - 1);
+            while (table[slot] >= 0 && !sameRankings(ballot, unique, table[slot])) {
+                slot = (slot + 1) & (table.length - 1);
+            }
+            if (table[slot] >= 0) {
+                unique.weights[table[slot]] += weight(ballot);
+                continue;
+            }
+            for (int rank = 0; rank < rankCount; rank++) {
+                rankMasks[rank] = rankMask(ballot, rank);
+            }
+            unique.add(rankMasks);
+            unique.weights[unique.size - 1] = weight(ballot);
+            table[slot] = unique.size - 1;
+            if (unique.size * 2 > table.length) {
+                table = unique.rehash(table.length * 2);
+            }
+        }
+        return unique;
+    }
+
+    // Candidates marked at the given rank of the given ballot, as a bitmask of candidate indices
+    public long rankMask(int ballot, int rank) {
+        byte mark = ranks.get(ballot, rank);
+        if (mark >= 0) {
+            return 1L << mark;
+        }
+        if (mark == NO_MARK) {
+            return 0L;
+        }
+        return overvoteMask((long) ballot * rankCount + rank);
+    }
+
+    // Results of highestContinuingCandidate for a ballot that is exhausted
+    public static final int EXHAUSTED_NO_CONTINUING = -1;
+    public static final int EXHAUSTED_OVERVOTE = -2;
+    public static final int EXHAUSTED_SKIPPED_RANKINGS = -3;
+    static final int SKIPS_TO_EXHAUST = 2; // sequential skipped rankings that exhaust a ballot under Maine law
+
+    // Single forward walk over the ballot's ranks against a bitmask of continuing candidates.
+    // Returns the index of the only continuing candidate at the highest continuing rank, or an
+    // EXHAUSTED_* code when that rank is overvoted, when 2 or more sequential rankings before it
+    // hold no continuing candidate, or when no continuing candidate is ranked at all.
+    public int highestContinuingCandidate(int ballot, long continuing) {
+        return highestContinuingCandidate(ballot, continuing, SKIPS_TO_EXHAUST);
+    }
+
+    // Same with a different skip rule: the ballot is exhausted when skipsToExhaust or more
+    // sequential rankings hold no continuing candidate; 0 when skips never exhaust a ballot
+    public int highestContinuingCandidate(int ballot, long continuing, int skipsToExhaust) {
+        int skipped = 0;
+        for (int rank = 0; rank < rankCount; rank++) {
+            byte mark = ranks.get(ballot, rank);
+            long marked;
+            if (mark >= 0) {
+                marked = (1L << mark) & continuing;
+            } else if (mark == NO_MARK) {
+                marked = 0L;
+            } else {
+                marked = overvoteMask((long) ballot * rankCount + rank) & continuing;
+            }
+            if (marked == 0) {
+                skipped++;
+                continue;
+            }
+            if ((marked & (marked - 1)) != 0) {
+                return EXHAUSTED_OVERVOTE;
+            }
+            if (skipsToExhaust > 0 && skipped >= skipsToExhaust) {
+                return EXHAUSTED_SKIPPED_RANKINGS;
+            }
+            return Long.numberOfTrailingZeros(marked);
+        }
+        return EXHAUSTED_NO_CONTINUING;
+    }
+
+    // Hash over every entry's rankings and weight, to recognise the same ballots in a later run
+    public long fingerprint() {
+        long h = ((long) candidates.length << 32) ^ ((long) rankCount << 16) ^ size;
+        for (int ballot = 0; ballot < size; ballot++) {
+            h = (h + hash(ballot)) * 0x9E3779B97F4A7C15L + weight(ballot);
+        }
+        return h ^ (h >>> 29);
+    }
+
+    private int hash(int ballot) {
+        long h = 0;
+        for (int rank = 0; rank < rankCount; rank++) {
+            h = (h + rankMask(ballot, rank)) * 0x9E3779B97F4A7C15L;
+        }
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private boolean sameRankings(int ballot, BallotStore other, int otherBallot) {
+        for (int rank = 0; rank < rankCount; rank++) {
+            if (rankMask(ballot, rank) != other.rankMask(otherBallot, rank)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int[] rehash(int tableSize) {
+        int[] table = new int[tableSize];
+        Arrays.fill(table, -1);
+        for (int entry = 0; entry < size; entry++) {
+            int slot = hash(entry) & (tableSize - 1);
+            while (table[slot] >= 0) {
+                slot = (slot + 1) & (tableSize - 1);
+            }
+            table[slot] = entry;
+        }
+        return table;
+    }
+
+    // Raw contents for BallotCache: the rank bytes, then the overvote positions and masks
+    int overvoteCount() {
+        return overvoteCount;
+    }
+
+    void writePacked(WritableByteChannel channel) throws IOException {
+        if (weights != null) {
+            throw new IllegalStateException("Weighted stores are not written in packed form");
+        }
+        ranks.write(channel, size);
+        ByteBuffer table = ByteBuffer.allocate(overvoteCount * 16);
+        table.asLongBuffer().put(overvotePositions, 0, overvoteCount).put(overvoteMasks, 0, overvoteCount);
+        while (table.hasRemaining()) {
+            channel.write(table);
+        }
+    }
+
+    // Store holding the packed contents found at position, as written by writePacked
+    static BallotStore readPacked(char[] candidates, int rankCount, int size, int overvoteCount,
+                                  FileChannel channel, long position, boolean offHeap) throws IOException {
+        BallotStore ballotStore = new BallotStore(candidates, rankCount, offHeap);
+        try {
+            // Map at most about 1 GB at a time, in whole ballots
+            long window = (long) ((1 << 30) / rankCount) * rankCount;
+            long rankBytes = (long) size * rankCount;
+            for (long done = 0; done < rankBytes; done += window) {
+                long length = Math.min(window, rankBytes - done);
+                ballotStore.ranks.read(channel.map(FileChannel.MapMode.READ_ONLY, position + done, length),
+                        (int) (done / rankCount));
+            }
+            ballotStore.size = size;
+            ballotStore.overvotePositions = new long[Math.max(16, overvoteCount)];
+            ballotStore.overvoteMasks = new long[Math.max(16, overvoteCount)];
+            if (overvoteCount > 0) {
+                LongBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, position + rankBytes,
+                        overvoteCount * 16L).asLongBuffer();
+                table.get(ballotStore.overvotePositions, 0, overvoteCount);
+                table.get(ballotStore.overvoteMasks, 0, overvoteCount);
+            }
+            ballotStore.overvoteCount = overvoteCount;
+            return ballotStore;
+        } catch (IOException | RuntimeException failed) {
+            ballotStore.close();
+            throw failed;
+        }
+    }
+
+    // Renders a ballot the way the text file lays it out, e.g. {O=[+, -], P=[-, +]}
+    public String describe(int ballot) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int c = 0; c < candidates.length; c++) {
+            if (c > 0) {
+                sb.append(", ");
+            }
+            sb.append(candidates[c]).append("=[");
+            for (int rank = 0; rank < rankCount; rank++) {
+                if (rank > 0) {
+                    sb.append(", ");
+                }
+                sb.append((rankMask(ballot, rank) & (1L << c)) != 0 ? '+' : '-');
+            }
+            sb.append(']');
+        }
+        return sb.append('}').toString();
+    }
+
+    private long overvoteMask(long position) {
+        return overvoteMasks[Arrays.binarySearch(overvotePositions, 0, overvoteCount, position)];
+    }
+
+    private void addOvervote(long position, long mask) {
+        if (overvoteCount == overvotePositions.length) {
+            overvotePositions = Arrays.copyOf(overvotePositions, overvoteCount * 2);
+            overvoteMasks = Arrays.copyOf(overvoteMasks, overvoteCount * 2);
+        }
+        // Ballots are appended in order, so positions stay sorted for binary search
+        overvotePositions[overvoteCount] = position;
+        overvoteMasks[overvoteCount] = mask;
+        overvoteCount++;
+    }
+
+    // Releases off-heap storage; a heap store needs no closing
+    @Override
+    public void close() {
+        ranks.release();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,36 @@
+package model;
+
+// Collects decoded ballots into a BallotStore, created once the candidate dictionary is known
+class BallotStoreSink implements BallotSink {
+
+    private BallotStore ballotStore;
+    private boolean offHeap;
+
+    BallotStoreSink() {
+    }
+
+    BallotStoreSink(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    // Appends to an existing store, whose dictionary is already fixed
+    BallotStoreSink(BallotStore ballotStore) {
+        this.ballotStore = ballotStore;
+    }
+
+    BallotStore getBallotStore() {
+        return ballotStore;
+    }
+
+    @Override
+    public void start(char[] candidates, int rankCount) {
+        if (ballotStore == null) {
+            ballotStore = new BallotStore(candidates, rankCount, offHeap);
+        }
+    }
+
+    @Override
+    public void accept(long[] rankMasks) {
+        ballotStore.add(rankMasks);
+    }
+}
@@ -0,0 +1,107 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Tabulates every contest of a multi-contest cast-vote-record file (see MultiContestReader).
+// The file is read once, into one ballot store per contest, and the contests are then tabulated
+// side by side on a pool of at most parallelism threads, largest first so that a big contest
+// does not start last. Each contest runs on a single thread; the pool supplies the parallelism.
+public class BatchTabulationEngine {
+
+    private int parallelism;
+    private boolean deduplicateBallots;
+    private boolean offHeapStorage;
+    private Long seed;
+
+    public BatchTabulationEngine() {
+        parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    // Number of contests tabulated at the same time
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public void setDeduplicateBallots(boolean deduplicateBallots) {
+        this.deduplicateBallots = deduplicateBallots;
+    }
+
+    public void setOffHeapStorage(boolean offHeapStorage) {
+        this.offHeapStorage = offHeapStorage;
+    }
+
+    // Master seed for decisions by lot: contest i draws from LotGenerator.deriveSeed(seed, i), in
+    // file order, so one contest can be replayed on its own with TabulationEngine.setSeed.
+    // Every contest gets a fresh random seed when null.
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    // Results by contest name, in the order the contests first appear in the file
+    public Map<String, TabulationResult> tabulate(Path cvrFile) throws IOException {
+        Map<String, BallotStore> contests = new MultiContestReader(offHeapStorage).read(cvrFile);
+        try {
+            return tabulate(contests);
+        } finally {
+            for (BallotStore ballotStore : contests.values()) {
+                ballotStore.close();
+            }
+        }
+    }
+
+    // Same for contests that are already loaded; the stores are left open
+    public Map<String, TabulationResult> tabulate(Map<String, BallotStore> contests) {
+        List<String> names = new ArrayList<>(contests.keySet());
+        Map<String, Long> contestSeeds = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            contestSeeds.put(names.get(i), seed == null ? null : LotGenerator.deriveSeed(seed, i));
+        }
+        List<String> largestFirst = new ArrayList<>(names);
+        largestFirst.sort(Comparator.comparingInt((String name) -> contests.get(name).size()).reversed());
+
+        List<Callable<TabulationResult>> tasks = new ArrayList<>();
+        for (String name : largestFirst) {
+            tasks.add(() -> tabulateContest(contests.get(name), contestSeeds.get(name)));
+        }
+        Map<String, TabulationResult> results = new HashMap<>();
+        String contest = null;
+        try (ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, Math.max(1, tasks.size())))) {
+            List<Future<TabulationResult>> done = pool.invokeAll(tasks);
+            for (int i = 0; i < done.size(); i++) {
+                contest = largestFirst.get(i);
+                results.put(contest, done.get(i).get());
+            }
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while tabulating contests", interrupted);
+        } catch (ExecutionException failed) {
+            throw new IllegalStateException("Tabulation of contest " + contest + " failed", failed.getCause());
+        }
+
+        Map<String, TabulationResult> inFileOrder = new LinkedHashMap<>();
+        for (String name : names) {
+            inFileOrder.put(name, results.get(name));
+        }
+        return Collections.unmodifiableMap(inFileOrder);
+    }
+
+    private TabulationResult tabulateContest(BallotStore ballotStore, Long contestSeed) {
+        TabulationEngine engine = new TabulationEngine();
+        engine.setParallelism(1);
+        engine.setDeduplicateBallots(deduplicateBallots);
+        engine.setSeed(contestSeed);
+        return engine.tabulate(ballotStore);
+    }
+}
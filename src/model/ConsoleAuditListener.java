@@ -0,0 +1,40 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Prints audit events to the console in the GUI's traditional format
+class ConsoleAuditListener implements AuditListener {
+
+    private final BallotStore ballotStore;
+    private final List<Character> continuingCandidates;
+
+    ConsoleAuditListener(BallotStore ballotStore) {
+        this.ballotStore = ballotStore;
+        this.continuingCandidates = new ArrayList<>();
+        for (int c = 0; c < ballotStore.candidateCount(); c++) {
+            continuingCandidates.add(ballotStore.candidate(c));
+        }
+    }
+
+    @Override
+    public void ballotExhausted(int round, int ballot, int weight, ExhaustionReason reason) {
+        System.out.println("continuing candidates: " + continuingCandidates);
+        if (weight == 1) {
+            System.out.println("ballot " + ballotStore.describe(ballot) + " removed");
+        } else {
+            System.out.println(weight + " ballots " + ballotStore.describe(ballot) + " removed");
+        }
+        System.out.println("   because " + reason.getDescription());
+    }
+
+    @Override
+    public void candidateEliminated(int round, char candidate, int votes) {
+        continuingCandidates.remove(Character.valueOf(candidate));
+    }
+
+    @Override
+    public void tieBrokenByLot(LotDecision decision) {
+        System.out.println("deciding by lot"); // required print statement
+    }
+}
@@ -0,0 +1,30 @@
+package model;
+
+// Why a ballot stopped counting, per Maine Title 21-A §723-A
+public enum ExhaustionReason {
+    NO_CONTINUING_CANDIDATE("it ranks no continuing candidate"),
+    OVERVOTE("it contains an overvote at the highest continuing ranking"),
+    SKIPPED_RANKINGS("it contains 2 or more sequential skipped rankings before its highest continuing ranking");
+
+    private final String description;
+
+    ExhaustionReason(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    // Maps the negative result codes of BallotStore.highestContinuingCandidate
+    static ExhaustionReason fromCode(int code) {
+        switch (code) {
+            case BallotStore.EXHAUSTED_OVERVOTE:
+                return OVERVOTE;
+            case BallotStore.EXHAUSTED_SKIPPED_RANKINGS:
+                return SKIPPED_RANKINGS;
+            default:
+                return NO_CONTINUING_CANDIDATE;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+// Rank bytes in one byte array on the Java heap
+class HeapRankStorage implements RankStorage {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int rankCount;
+    private byte[] ranks;
+
+    HeapRankStorage(int rankCount) {
+        this.rankCount = rankCount;
+        this.ranks = new byte[INITIAL_CAPACITY * rankCount];
+    }
+
+    @Override
+    public byte get(int ballot, int rank) {
+        return ranks[ballot * rankCount + rank];
+    }
+
+    @Override
+    public void set(int ballot, int rank, byte mark) {
+        ranks[ballot * rankCount + rank] = mark;
+    }
+
+    @Override
+    public void reserve(int ballots) {
+        long minCapacity = (long) ballots * rankCount;
+        if (minCapacity <= ranks.length) {
+            return;
+        }
+        long newCapacity = Math.max(minCapacity, (long) ranks.length * 2);
+        if (newCapacity > Integer.MAX_VALUE - 8) {
+            newCapacity = Integer.MAX_VALUE - 8;
+            if (newCapacity < minCapacity) {
+                throw new IllegalStateException("Too many ballots for an in-memory store; use off-heap storage");
+            }
+        }
+        ranks = Arrays.copyOf(ranks, (int) newCapacity);
+    }
+
+    @Override
+    public void read(ByteBuffer source, int at) {
+        reserve(at + source.remaining() / rankCount);
+        source.get(ranks, at * rankCount, source.remaining());
+    }
+
+    @Override
+    public void write(WritableByteChannel channel, int count) throws IOException {
+        ByteBuffer stored = ByteBuffer.wrap(ranks, 0, count * rankCount);
+        while (stored.hasRemaining()) {
+            channel.write(stored);
+        }
+    }
+
+    @Override
+    public void copy(RankStorage source, int count, int at, int rankCount) {
+        if (source instanceof HeapRankStorage) {
+            System.arraycopy(((HeapRankStorage) source).ranks, 0, ranks, at * rankCount, count * rankCount);
+        } else {
+            RankStorage.super.copy(source, count, at, rankCount);
+        }
+    }
+}
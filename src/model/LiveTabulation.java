@@ -0,0 +1,153 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Election-night tabulation over ballots that keep arriving.
+// Batches can be added at any time, from a BallotStore, from a parser (this is a BallotSink), or
+// by following ballot files that are still being written: each file is read on from the end of
+// the last complete ballot seen in it, so a growing file is never decoded twice. First-choice
+// tallies are kept up to date on every ballot. A full tabulation runs on demand over the packed
+// ballots already in memory, and its result is reused until more ballots arrive.
+// All methods may be called from different threads.
+public class LiveTabulation implements BallotSink {
+
+    private static final int SCAN_BUFFER = 1 << 16;
+
+    private final TabulationEngine engine;
+    private final Map<Path, Long> readPositions;
+    private BallotStore ballotStore;
+    private long[] firstChoiceCounts;
+    private TabulationResult lastResult; // null once ballots arrived after it
+
+    // Every tabulation draws its lots from the same seed, so a refresh only changes the outcome
+    // of a tie when the ballots changed
+    public LiveTabulation(long seed) {
+        engine = new TabulationEngine();
+        engine.setSeed(seed);
+        readPositions = new HashMap<>();
+    }
+
+    // Reads the ballots added to the file since the last call for it; a final ballot that is not
+    // complete yet is left for the next call. Returns the number of ballots added.
+    public synchronized long readNewBallots(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        long from = readPositions.getOrDefault(key, 0L);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < from) {
+                throw new IllegalStateException(file + " is shorter than the part already read");
+            }
+            long to = endsWithEnd(channel, size) ? size : endOfLastLine(channel, from, size);
+            if (to == from) {
+                return 0;
+            }
+            BallotFileParser parser = ballotStore == null ? new BallotFileParser(this)
+                    : new BallotFileParser(this, ballotStore.candidates(), ballotStore.rankCount());
+            try {
+                parser.parse(channel, from, to);
+            } finally {
+                // Ballots before a bad one were added already and must not be read again
+                readPositions.put(key, parser.getEndOfLastBallot());
+            }
+            return parser.getBallotCount();
+        }
+    }
+
+    public synchronized void addBallots(BallotStore batch) {
+        if (batch.size() == 0) {
+            return;
+        }
+        start(batch.candidates(), batch.rankCount());
+        ballotStore.addAll(batch);
+        for (int ballot = 0; ballot < batch.size(); ballot++) {
+            countFirstChoices(batch.rankMask(ballot, 0), batch.weight(ballot));
+        }
+        lastResult = null;
+    }
+
+    @Override
+    public synchronized void start(char[] candidates, int rankCount) {
+        if (ballotStore == null) {
+            ballotStore = new BallotStore(candidates, rankCount);
+            firstChoiceCounts = new long[candidates.length];
+        } else if (!Arrays.equals(ballotStore.candidates(), candidates) || ballotStore.rankCount() != rankCount) {
+            throw new IllegalArgumentException("Batch lists candidates " + Arrays.toString(candidates) + " with "
+                    + rankCount + " rankings, but the election has " + Arrays.toString(ballotStore.candidates())
+                    + " with " + ballotStore.rankCount());
+        }
+    }
+
+    @Override
+    public synchronized void accept(long[] rankMasks) {
+        ballotStore.add(rankMasks);
+        countFirstChoices(rankMasks[0], 1);
+        lastResult = null;
+    }
+
+    public synchronized long getBallotCount() {
+        return ballotStore == null ? 0 : ballotStore.ballotCount();
+    }
+
+    // Every mark at the first rank, counted as in round 0
+    public synchronized Map<Character, Long> getFirstChoiceCounts() {
+        Map<Character, Long> counts = new TreeMap<>();
+        for (int c = 0; ballotStore != null && c < firstChoiceCounts.length; c++) {
+            counts.put(ballotStore.candidate(c), firstChoiceCounts[c]);
+        }
+        return counts;
+    }
+
+    // Full tabulation of every ballot received so far; null before the first ballot
+    public synchronized TabulationResult tabulate() {
+        if (lastResult == null && ballotStore != null) {
+            lastResult = engine.tabulate(ballotStore);
+        }
+        return lastResult;
+    }
+
+    private void countFirstChoices(long firstRank, int weight) {
+        while (firstRank != 0) {
+            firstChoiceCounts[Long.numberOfTrailingZeros(firstRank)] += weight;
+            firstRank &= firstRank - 1;
+        }
+    }
+
+    // True when the last line is an END without a newline after it, which nothing can extend
+    private static boolean endsWithEnd(FileChannel channel, long size) throws IOException {
+        ByteBuffer tail = ByteBuffer.allocate((int) Math.min(size, 16));
+        channel.read(tail, size - tail.capacity());
+        String text = new String(tail.array(), 0, tail.position(), StandardCharsets.US_ASCII);
+        int lineStart = text.lastIndexOf('\n') + 1;
+        // The line must start inside the tail, or the tail must reach back to the start of the file
+        return (lineStart > 0 || size <= tail.capacity()) && text.substring(lineStart).strip().equals("END");
+    }
+
+    // Offset just past the last newline in [from, size), or from when there is none
+    private static long endOfLastLine(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(SCAN_BUFFER);
+        for (long end = size; end > from; end -= block.capacity()) {
+            long start = Math.max(from, end - block.capacity());
+            block.clear().limit((int) (end - start));
+            while (block.hasRemaining()) {
+                if (channel.read(block, start + block.position()) < 0) {
+                    break;
+                }
+            }
+            for (int i = block.position() - 1; i >= 0; i--) {
+                if (block.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+        }
+        return from;
+    }
+}
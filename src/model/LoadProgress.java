@@ -0,0 +1,49 @@
+package model;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// How far a ballot load has got, for a progress display on another thread, and a way to stop it.
+// The parsers report every few thousand ballots, so watching costs the load next to nothing;
+// after cancel() the load gives up with a CancellationException at its next report.
+public class LoadProgress {
+
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong ballotsRead = new AtomicLong();
+    private volatile long totalBytes;
+    private volatile boolean cancelled;
+
+    // Size of the ballot file, or 0 until the load has started
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getBallotsRead() {
+        return ballotsRead.get();
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void start(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    // Called from the loading threads, possibly several at once
+    void advance(long bytes, long ballots) {
+        if (cancelled) {
+            throw new CancellationException("Ballot load cancelled");
+        }
+        bytesRead.addAndGet(bytes);
+        ballotsRead.addAndGet(ballots);
+    }
+}
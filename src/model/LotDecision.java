@@ -0,0 +1,41 @@
+package model;
+
+import java.util.List;
+
+// A tie resolved by lot, recorded so a recount can reproduce it
+public class LotDecision {
+
+    private final int round;
+    private final List<Character> tiedCandidates;
+    private final char selected;
+    private final boolean forWinner; // false when the lot picked the candidate to eliminate
+
+    public LotDecision(int round, List<Character> tiedCandidates, char selected, boolean forWinner) {
+        this.round = round;
+        this.tiedCandidates = List.copyOf(tiedCandidates);
+        this.selected = selected;
+        this.forWinner = forWinner;
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    public List<Character> getTiedCandidates() {
+        return tiedCandidates;
+    }
+
+    public char getSelected() {
+        return selected;
+    }
+
+    public boolean isForWinner() {
+        return forWinner;
+    }
+
+    @Override
+    public String toString() {
+        return "round " + round + ": " + (forWinner ? "winner " : "eliminated ") + selected
+                + " chosen by lot from " + tiedCandidates;
+    }
+}
@@ -0,0 +1,53 @@
+package model;
+
+// Seeded random source for decisions by lot (the SplitMix64 generator). The whole state is one
+// long, so the same seed always reproduces the same lot decisions, and the state can be saved.
+public class LotGenerator implements LotSource {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    public LotGenerator(long seed) {
+        this.state = seed;
+    }
+
+    // Independent, well-spread seed for trial number index of a run started from masterSeed
+    public static long deriveSeed(long masterSeed, long index) {
+        return mix(masterSeed ^ mix(index * GOLDEN_GAMMA + GOLDEN_GAMMA));
+    }
+
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix(state);
+    }
+
+    // Uniform in [0, bound), without modulo bias
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        long bits = nextLong() >>> 1;
+        long value = bits % bound;
+        while (bits - value + (bound - 1) < 0) {
+            bits = nextLong() >>> 1;
+            value = bits % bound;
+        }
+        return (int) value;
+    }
+
+    @Override
+    public int choose(int tiedCount) {
+        return nextInt(tiedCount);
+    }
+
+    long getState() {
+        return state;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
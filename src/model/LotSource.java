@@ -0,0 +1,7 @@
+package model;
+
+// Decides ties by lot: picks one of tiedCount tied candidates, in candidate order
+interface LotSource {
+
+    int choose(int tiedCount);
+}
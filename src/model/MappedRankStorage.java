@@ -0,0 +1,128 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Rank bytes in a memory-mapped scratch file, outside the Java heap, so a store can be larger
+// than the heap and adds nothing for the garbage collector to trace. The operating system pages
+// the file in and out; a sequential walk over the ballots reads it front to back.
+// The file is mapped in segments of a power-of-two number of ballots, so a ballot never spans
+// two segments, and is deleted once the storage is released.
+class MappedRankStorage implements RankStorage {
+
+    private static final long SEGMENT_TARGET = 1L << 26; // about 64 MB per mapping
+
+    private final int rankCount;
+    private final int segmentShift; // ballots per segment, as a power of two
+    private final int segmentMask;
+    private final FileChannel channel;
+    private MappedByteBuffer[] segments;
+
+    MappedRankStorage(int rankCount) {
+        this.rankCount = rankCount;
+        this.segmentShift = 63 - Long.numberOfLeadingZeros(Math.max(1, SEGMENT_TARGET / rankCount));
+        this.segmentMask = (1 << segmentShift) - 1;
+        this.segments = new MappedByteBuffer[0];
+        try {
+            Path scratch = Files.createTempFile("rcv-ballots", ".bin");
+            this.channel = FileChannel.open(scratch, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException ioEx) {
+            throw new UncheckedIOException("Cannot create the off-heap ballot file", ioEx);
+        }
+    }
+
+    @Override
+    public byte get(int ballot, int rank) {
+        return segments[ballot >>> segmentShift].get((ballot & segmentMask) * rankCount + rank);
+    }
+
+    @Override
+    public void set(int ballot, int rank, byte mark) {
+        segments[ballot >>> segmentShift].put((ballot & segmentMask) * rankCount + rank, mark);
+    }
+
+    @Override
+    public void reserve(int ballots) {
+        int needed = ballots == 0 ? 0 : ((ballots - 1) >>> segmentShift) + 1;
+        if (needed <= segments.length) {
+            return;
+        }
+        int mapped = segments.length;
+        segments = Arrays.copyOf(segments, needed);
+        long segmentBytes = (long) rankCount << segmentShift;
+        try {
+            for (int s = mapped; s < needed; s++) {
+                // Mapping past the end grows the file; untouched pages take no disk space
+                segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, s * segmentBytes, segmentBytes);
+            }
+        } catch (IOException ioEx) {
+            throw new UncheckedIOException("Cannot grow the off-heap ballot file", ioEx);
+        }
+    }
+
+    @Override
+    public void read(ByteBuffer source, int at) {
+        int count = source.remaining() / rankCount;
+        reserve(at + count);
+        for (int ballot = at; ballot < at + count; ) {
+            int run = Math.min(at + count - ballot, (1 << segmentShift) - (ballot & segmentMask));
+            segments[ballot >>> segmentShift].put((ballot & segmentMask) * rankCount, source, source.position(),
+                    run * rankCount);
+            source.position(source.position() + run * rankCount);
+            ballot += run;
+        }
+    }
+
+    @Override
+    public void write(WritableByteChannel channel, int count) throws IOException {
+        for (int ballot = 0; ballot < count; ) {
+            int run = Math.min(count - ballot, 1 << segmentShift);
+            ByteBuffer stored = segments[ballot >>> segmentShift].slice(0, run * rankCount);
+            while (stored.hasRemaining()) {
+                channel.write(stored);
+            }
+            ballot += run;
+        }
+    }
+
+    @Override
+    public void copy(RankStorage source, int count, int at, int rankCount) {
+        if (!(source instanceof MappedRankStorage)) {
+            RankStorage.super.copy(source, count, at, rankCount);
+            return;
+        }
+        MappedRankStorage from = (MappedRankStorage) source;
+        // Copy in runs that stay inside one segment on both sides
+        int copied = 0;
+        while (copied < count) {
+            int fromBallot = copied;
+            int toBallot = at + copied;
+            int run = Math.min(count - copied, Math.min(
+                    (1 << from.segmentShift) - (fromBallot & from.segmentMask),
+                    (1 << segmentShift) - (toBallot & segmentMask)));
+            segments[toBallot >>> segmentShift].put((toBallot & segmentMask) * rankCount,
+                    from.segments[fromBallot >>> from.segmentShift], (fromBallot & from.segmentMask) * rankCount,
+                    run * rankCount);
+            copied += run;
+        }
+    }
+
+    @Override
+    public void release() {
+        segments = new MappedByteBuffer[0];
+        try {
+            channel.close(); // the mappings stay valid until collected, but the file is gone
+        } catch (IOException ioEx) {
+            throw new UncheckedIOException(ioEx);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package model;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+// Win counts of a Monte Carlo run over possible lot outcomes
+public class MonteCarloResult {
+
+    private final char[] candidates;
+    private final long[] wins;
+    private final long trialsWithoutWinner;
+    private final int trials;
+    private final long masterSeed;
+
+    MonteCarloResult(char[] candidates, long[] wins, long trialsWithoutWinner, int trials, long masterSeed) {
+        this.candidates = candidates;
+        this.wins = wins;
+        this.trialsWithoutWinner = trialsWithoutWinner;
+        this.trials = trials;
+        this.masterSeed = masterSeed;
+    }
+
+    public int getTrials() {
+        return trials;
+    }
+
+    public long getMasterSeed() {
+        return masterSeed;
+    }
+
+    // Lot seed of one trial, for replaying it with TabulationEngine.setSeed
+    public long getTrialSeed(int trial) {
+        return LotGenerator.deriveSeed(masterSeed, trial);
+    }
+
+    public long getWins(char candidate) {
+        for (int c = 0; c < candidates.length; c++) {
+            if (candidates[c] == candidate) {
+                return wins[c];
+            }
+        }
+        return 0;
+    }
+
+    public long getTrialsWithoutWinner() {
+        return trialsWithoutWinner;
+    }
+
+    // Share of trials won by each candidate, in candidate order
+    public Map<Character, Double> getWinProbabilities() {
+        Map<Character, Double> probabilities = new TreeMap<>();
+        for (int c = 0; c < candidates.length; c++) {
+            probabilities.put(candidates[c], (double) wins[c] / trials);
+        }
+        return probabilities;
+    }
+}
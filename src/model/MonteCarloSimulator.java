@@ -0,0 +1,168 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Estimates how often each candidate wins when ties are decided by lot.
+// Trial i is the tabulation whose lots come from new LotGenerator(LotGenerator.deriveSeed(masterSeed, i)),
+// so any single trial can be replayed with TabulationEngine.setSeed. Trials only differ where a lot
+// is drawn, so they share their work: every distinct sequence of lot outcomes is tabulated once,
+// from copy-on-write forks of the shared state, and each trial just walks those outcomes with its
+// own generator. The ballot store itself is never copied.
+public class MonteCarloSimulator {
+
+    private final int parallelism;
+
+    public MonteCarloSimulator(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public MonteCarloResult run(BallotStore ballotStore, int trials, long masterSeed) {
+        if (trials < 1) {
+            throw new IllegalArgumentException("At least one trial is needed");
+        }
+        Outcome root = new Outcome(new Tabulation(ballotStore, AuditListener.NONE, null), new int[0]);
+
+        int workers = Math.min(parallelism, trials);
+        List<Callable<long[]>> tasks = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            int first = (int) ((long) trials * w / workers);
+            int last = (int) ((long) trials * (w + 1) / workers);
+            tasks.add(() -> runTrials(root, ballotStore.candidateCount(), first, last, masterSeed));
+        }
+
+        long[] wins = new long[ballotStore.candidateCount() + 1]; // last slot: no winner
+        try (ForkJoinPool pool = new ForkJoinPool(workers)) {
+            for (Future<long[]> partial : pool.invokeAll(tasks)) {
+                long[] counted = partial.get();
+                for (int c = 0; c < wins.length; c++) {
+                    wins[c] += counted[c];
+                }
+            }
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during Monte Carlo run", interrupted);
+        } catch (ExecutionException failed) {
+            throw new IllegalStateException("Monte Carlo trial failed", failed.getCause());
+        }
+        return new MonteCarloResult(ballotStore.candidates(), Arrays.copyOf(wins, wins.length - 1),
+                wins[wins.length - 1], trials, masterSeed);
+    }
+
+    private static long[] runTrials(Outcome root, int candidateCount, int first, int last, long masterSeed) {
+        long[] wins = new long[candidateCount + 1];
+        for (int trial = first; trial < last; trial++) {
+            LotGenerator lots = new LotGenerator(LotGenerator.deriveSeed(masterSeed, trial));
+            Outcome outcome = root;
+            outcome.resolve();
+            while (outcome.tiedCount > 0) {
+                outcome = outcome.next(lots.nextInt(outcome.tiedCount));
+                outcome.resolve();
+            }
+            wins[outcome.winner >= 0 ? outcome.winner : candidateCount]++;
+        }
+        return wins;
+    }
+
+    // A point where trials can diverge: a tabulation paused at the start of a round, plus the lot
+    // choices to replay from there. Resolved once, by the first trial that reaches it, into either
+    // a final winner or the size of the next undecided tie and one child per possible choice.
+    private static final class Outcome {
+        private final Tabulation start; // only ever copied, never advanced
+        private final int[] script;
+        private boolean resolved;
+        private int tiedCount; // 0 once the tabulation is finished
+        private int winner;
+        private Tabulation branchStart;
+        private int[] branchScript;
+        private Outcome[] next;
+
+        Outcome(Tabulation start, int[] script) {
+            this.start = start;
+            this.script = script;
+        }
+
+        synchronized void resolve() {
+            if (resolved) {
+                return;
+            }
+            ScriptedLots lots = new ScriptedLots(script);
+            Tabulation run = fork(start, lots);
+            int lotRound = -1;
+            int usedBeforeLotRound = 0;
+            while (!run.isFinished() && lotRound < 0) {
+                int round = run.getRound();
+                int used = lots.used;
+                try {
+                    run.nextRound();
+                } catch (LotNeeded needed) {
+                    tiedCount = needed.tiedCount;
+                    lotRound = round;
+                    usedBeforeLotRound = used;
+                }
+            }
+            if (lotRound < 0) {
+                winner = run.getWinnerIndex();
+            } else {
+                // Children restart from the beginning of the round that needs the new lot
+                branchStart = fork(start, new ScriptedLots(script));
+                while (branchStart.getRound() < lotRound) {
+                    branchStart.nextRound();
+                }
+                branchScript = Arrays.copyOfRange(script, usedBeforeLotRound, script.length + 1);
+                next = new Outcome[tiedCount];
+            }
+            resolved = true;
+        }
+
+        // Sibling outcomes share their start, and copying marks its piles as shared
+        private static Tabulation fork(Tabulation start, LotSource lots) {
+            synchronized (start) {
+                return start.copy(AuditListener.NONE, lots);
+            }
+        }
+
+        synchronized Outcome next(int choice) {
+            if (next[choice] == null) {
+                int[] childScript = branchScript.clone();
+                childScript[childScript.length - 1] = choice;
+                next[choice] = new Outcome(branchStart, childScript);
+            }
+            return next[choice];
+        }
+    }
+
+    // Replays fixed lot choices, then stops the tabulation at the first tie it has no choice for
+    private static final class ScriptedLots implements LotSource {
+        private final int[] script;
+        private int used;
+
+        ScriptedLots(int[] script) {
+            this.script = script;
+        }
+
+        @Override
+        public int choose(int tiedCount) {
+            if (used == script.length) {
+                throw new LotNeeded(tiedCount);
+            }
+            return script[used++];
+        }
+    }
+
+    private static final class LotNeeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int tiedCount;
+
+        LotNeeded(int tiedCount) {
+            super(null, null, false, false);
+            this.tiedCount = tiedCount;
+        }
+    }
+}
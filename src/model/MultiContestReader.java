@@ -0,0 +1,181 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Reads a cast-vote-record file holding several contests per ballot, in a single pass:
+//     CONTEST <name>   starts the rankings of one contest
+//     O|+ - - -        one line per candidate of that contest, as in a one-contest ballot file
+//     END              closes the physical ballot, with all of its contests
+// Every contest gets its own BallotFileParser and BallotStore, so each one keeps its own
+// candidate letters and number of rankings, fixed by the first ballot that holds the contest.
+// A ballot may leave out contests (e.g. another ballot style or district); it then only counts
+// in the contests it lists.
+class MultiContestReader {
+
+    private static final long MAP_WINDOW = 1L << 28; // 256 MB per mapping
+    private static final byte[] CONTEST = "CONTEST".getBytes(StandardCharsets.US_ASCII);
+    private static final ByteBuffer END_LINE = ByteBuffer.wrap(new byte[] {'E', 'N', 'D', '\n'}).asReadOnlyBuffer();
+
+    private final boolean offHeap;
+    private final Map<String, Contest> contests = new LinkedHashMap<>();
+    private byte[] line = new byte[256];
+    private ByteBuffer lineBuffer = ByteBuffer.wrap(line);
+    private int lineLength;
+    private long lineNumber;
+    private Contest current; // contest whose candidate lines are being read, null between contests
+    private int ballotStamp; // number of the physical ballot being read
+
+    MultiContestReader(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    // Ballot stores by contest name, in order of first appearance; the caller must close them
+    Map<String, BallotStore> read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            lineNumber = 1;
+            ballotStamp = 1;
+            for (long window = 0; window < size; window += MAP_WINDOW) {
+                scan(channel.map(FileChannel.MapMode.READ_ONLY, window, Math.min(MAP_WINDOW, size - window)));
+            }
+            if (lineLength > 0) {
+                endOfLine(); // the last line may not be followed by a newline
+            }
+        } catch (IOException | RuntimeException failed) {
+            closeStores();
+            throw failed;
+        }
+        Map<String, BallotStore> stores = new LinkedHashMap<>();
+        for (Map.Entry<String, Contest> contest : contests.entrySet()) {
+            BallotStore ballotStore = contest.getValue().sink.getBallotStore();
+            if (ballotStore != null) {
+                stores.put(contest.getKey(), ballotStore);
+            }
+        }
+        if (stores.isEmpty()) {
+            throw new IllegalArgumentException("No complete ballots found in " + path);
+        }
+        return stores;
+    }
+
+    private void scan(MappedByteBuffer buffer) {
+        int limit = buffer.limit();
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (lineLength == line.length) {
+                grow();
+            }
+            line[lineLength++] = b;
+            if (b == '\n') {
+                endOfLine();
+            }
+        }
+    }
+
+    // Routes the line just read: contest headers switch the current contest, END closes the
+    // ballot in every contest it listed, and candidate lines go to the current contest's parser
+    private void endOfLine() {
+        int start = 0;
+        int end = lineLength;
+        while (start < end && isBlank(line[start])) {
+            start++;
+        }
+        while (end > start && (isBlank(line[end - 1]) || line[end - 1] == '\n')) {
+            end--;
+        }
+        if (start == end) {
+            // blank line
+        } else if (isContestHeader(start, end)) {
+            String name = new String(line, start + CONTEST.length, end - start - CONTEST.length,
+                    StandardCharsets.UTF_8).trim();
+            current = contests.computeIfAbsent(name, Contest::new);
+            if (current.lastBallot == ballotStamp) {
+                throw new IllegalArgumentException("Contest " + name + " appears twice in one ballot (line "
+                        + lineNumber + ")");
+            }
+            current.lastBallot = ballotStamp;
+        } else if (end - start == 3 && line[start] == 'E' && line[start + 1] == 'N' && line[start + 2] == 'D') {
+            for (Contest contest : contests.values()) {
+                if (contest.lastBallot == ballotStamp) {
+                    contest.feed(END_LINE, lineNumber);
+                }
+            }
+            current = null;
+            ballotStamp++;
+        } else if (current == null) {
+            throw new IllegalArgumentException("Expected CONTEST before the candidate lines (line " + lineNumber + ")");
+        } else {
+            if (line[lineLength - 1] != '\n') {
+                // Last line of the file, without a newline
+                if (lineLength == line.length) {
+                    grow();
+                }
+                line[lineLength++] = '\n';
+            }
+            lineBuffer.limit(lineLength);
+            current.feed(lineBuffer, lineNumber);
+        }
+        lineLength = 0;
+        lineNumber++;
+    }
+
+    private void grow() {
+        line = Arrays.copyOf(line, line.length * 2);
+        lineBuffer = ByteBuffer.wrap(line);
+    }
+
+    private boolean isContestHeader(int start, int end) {
+        if (end - start <= CONTEST.length || !isBlank(line[start + CONTEST.length])) {
+            return false;
+        }
+        for (int i = 0; i < CONTEST.length; i++) {
+            if (line[start + i] != CONTEST[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private void closeStores() {
+        for (Contest contest : contests.values()) {
+            if (contest.sink.getBallotStore() != null) {
+                contest.sink.getBallotStore().close();
+            }
+        }
+    }
+
+    private final class Contest {
+        private final String name;
+        private final BallotStoreSink sink;
+        private final BallotFileParser parser;
+        private int lastBallot; // stamp of the last physical ballot that listed this contest
+
+        Contest(String name) {
+            this.name = name;
+            this.sink = new BallotStoreSink(offHeap);
+            this.parser = new BallotFileParser(sink);
+        }
+
+        void feed(ByteBuffer bytes, long lineNumber) {
+            parser.setLineNumber(lineNumber);
+            try {
+                parser.decode(bytes);
+            } catch (IllegalArgumentException badLine) {
+                throw new IllegalArgumentException("Contest " + name + ": " + badLine.getMessage(), badLine);
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package model;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Decodes one ballot file on several threads.
+// The first ballot is decoded on the calling thread to fix the candidate dictionary; the rest
+// of the file is cut into byte ranges that each end right after an END line, every range is
+// decoded into its own BallotStore, and the stores are appended in file order, so the result
+// is identical to a single-threaded parse.
+class ParallelBallotLoader {
+
+    private static final long MIN_CHUNK = 1L << 20; // not worth a task below 1 MB
+    private static final int CHUNKS_PER_THREAD = 4; // extra chunks even out uneven workers
+    private static final int SCAN_BUFFER = 1 << 16;
+    private static final byte[] END = {'E', 'N', 'D'};
+
+    private final int parallelism;
+    private final boolean offHeap;
+    private LoadProgress progress;
+
+    ParallelBallotLoader(int parallelism, boolean offHeap) {
+        this.parallelism = Math.max(1, parallelism);
+        this.offHeap = offHeap;
+    }
+
+    void setProgress(LoadProgress progress) {
+        this.progress = progress;
+    }
+
+    BallotStore load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            long firstEnd = nextBallotBoundary(channel, 0, size);
+            BallotStoreSink head = new BallotStoreSink(offHeap);
+            parser(head).parse(channel, 0, firstEnd);
+            BallotStore ballotStore = head.getBallotStore();
+            if (ballotStore == null) {
+                throw new IllegalArgumentException("No complete ballots found in " + path);
+            }
+
+            try {
+                appendRest(path, channel, ballotStore, firstEnd, size);
+            } catch (IOException | RuntimeException failed) {
+                ballotStore.close();
+                throw failed;
+            }
+            return ballotStore;
+        }
+    }
+
+    // Decodes everything after the first ballot into ballotStore
+    private void appendRest(Path path, FileChannel channel, BallotStore ballotStore, long firstEnd, long size)
+            throws IOException {
+        List<Long> bounds = splitPoints(channel, firstEnd, size);
+        if (bounds.size() == 2) {
+            // Too small to split; finish on this thread
+            parser(new BallotStoreSink(ballotStore), ballotStore.candidates(), ballotStore.rankCount())
+                    .parse(channel, firstEnd, size);
+            return;
+        }
+
+        List<Callable<BallotStore>> chunks = new ArrayList<>();
+        for (int i = 0; i + 1 < bounds.size(); i++) {
+            long start = bounds.get(i);
+            long end = bounds.get(i + 1);
+            chunks.add(() -> parseChunk(channel, start, end, ballotStore.candidates(), ballotStore.rankCount()));
+        }
+        List<Future<BallotStore>> parsed = List.of();
+        try (ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+            // invokeAll returns the futures in task order, which is file order
+            parsed = pool.invokeAll(chunks);
+            for (Future<BallotStore> chunk : parsed) {
+                ballotStore.addAll(chunk.get());
+            }
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + path);
+        } catch (ExecutionException failed) {
+            Throwable cause = failed.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            // Chunk stores only live until they are merged
+            for (Future<BallotStore> chunk : parsed) {
+                if (chunk.state() == Future.State.SUCCESS) {
+                    chunk.resultNow().close();
+                }
+            }
+        }
+    }
+
+    private BallotStore parseChunk(FileChannel channel, long start, long end,
+                                   char[] candidates, int rankCount) throws IOException {
+        BallotStore chunk = new BallotStore(candidates, rankCount, offHeap);
+        try {
+            parser(new BallotStoreSink(chunk), candidates, rankCount).parse(channel, start, end);
+        } catch (IOException | RuntimeException failed) {
+            chunk.close();
+            throw failed;
+        }
+        return chunk;
+    }
+
+    private BallotFileParser parser(BallotSink sink) {
+        BallotFileParser parser = new BallotFileParser(sink);
+        parser.setProgress(progress);
+        return parser;
+    }
+
+    private BallotFileParser parser(BallotSink sink, char[] candidates, int rankCount) {
+        BallotFileParser parser = new BallotFileParser(sink, candidates, rankCount);
+        parser.setProgress(progress);
+        return parser;
+    }
+
+    // Range boundaries from start to size, each one just after an END line
+    private List<Long> splitPoints(FileChannel channel, long start, long size) throws IOException {
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+        long remaining = size - start;
+        int chunkCount = (int) Math.min((long) parallelism * CHUNKS_PER_THREAD, remaining / MIN_CHUNK);
+        for (int i = 1; i < chunkCount; i++) {
+            long target = Math.max(start + remaining * i / chunkCount, bounds.get(bounds.size() - 1));
+            long boundary = nextBallotBoundary(channel, target, size);
+            if (boundary > bounds.get(bounds.size() - 1) && boundary < size) {
+                bounds.add(boundary);
+            }
+        }
+        bounds.add(size);
+        return bounds;
+    }
+
+    // Offset just past the first END line that starts at or after from, or size if there is none
+    static long nextBallotBoundary(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(SCAN_BUFFER);
+        // Start one byte early so a newline right before from marks the start of a line
+        long offset = from > 0 ? from - 1 : 0;
+        boolean lineStartSeen = from == 0;
+        int endMatched = 0;
+        while (offset < size) {
+            block.clear();
+            int read = channel.read(block, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = block.get(i);
+                if (b == '\n') {
+                    if (lineStartSeen && endMatched == END.length) {
+                        return offset + i + 1;
+                    }
+                    lineStartSeen = true;
+                    endMatched = 0;
+                } else if (b != ' ' && b != '\t' && b != '\r') {
+                    endMatched = endMatched >= 0 && endMatched < END.length && b == END[endMatched]
+                            ? endMatched + 1 : -1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+}
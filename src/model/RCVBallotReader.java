@@ -1,19 +1,18 @@
 //completed
 package model;
 
-// Provided imports
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
 // Additional imports
-import java.util.TreeMap;
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class RCVBallotReader {
 
      // Provided instance variables
     private static final String DATA_FILE_NAME = "ballots.txt";
+    // Additional variable declarations
+    private boolean offHeapStorage;
+    private boolean ballotCache;
+    private LoadProgress loadProgress;
 
     // Provided constructor
     public RCVBallotReader() {
@@ -24,53 +23,112 @@ public class RCVBallotReader {
         return DATA_FILE_NAME;
     }
 
-    public List<Map<Character, List<Character>>> makeBallotsFromFile() {
-        // Read the file using try with resources
-        try (BufferedReader br = new BufferedReader(new FileReader(getDataFileName()))) {
-            // Read lines from ballots.txt into an ArrayList of type String
-            ArrayList<String> ballots = new ArrayList<>();
-            String line;
-            while ((line = br.readLine()) != null) {
-                ballots.add(line.trim());
-            }
-            // Call makeListOfBallots method and return the result
-            return makeListOfBallots(ballots);
-        } catch (java.io.FileNotFoundException fnfEx) {  // Most specific exception type
-            System.err.println("File not found: " + getDataFileName());
-            System.err.println(fnfEx.getMessage());
+    // Keep the packed ballots in a memory-mapped scratch file instead of the Java heap, for
+    // elections larger than the heap; the returned stores must then be closed after use
+    public void setOffHeapStorage(boolean offHeapStorage) {
+        this.offHeapStorage = offHeapStorage;
+    }
+
+    public boolean isOffHeapStorage() {
+        return offHeapStorage;
+    }
+
+    // Keep a compiled copy of each ballot file next to it (see BallotCache), so that loading the
+    // same file again skips the text parsing; the copy is rebuilt whenever the file changes
+    public void setBallotCache(boolean ballotCache) {
+        this.ballotCache = ballotCache;
+    }
+
+    // Reports how far each following load has got (see LoadProgress); null for none
+    public void setLoadProgress(LoadProgress loadProgress) {
+        this.loadProgress = loadProgress;
+    }
+
+    public BallotStore makeBallotsFromFile() {
+        return makeBallotsFromFile(Paths.get(getDataFileName()), Runtime.getRuntime().availableProcessors());
+    }
+
+    public BallotStore makeBallotsFromFile(Path path) {
+        return makeBallotsFromFile(path, 1);
+    }
+
+    // Reads on up to parallelism threads; the ballot order always matches the file
+    public BallotStore makeBallotsFromFile(Path path, int parallelism) {
+        try {
+            return loadBallots(path, parallelism);
+        } catch (java.nio.file.NoSuchFileException nsfEx) {  // Most specific exception type
+            System.err.println("File not found: " + path);
+            System.err.println(nsfEx.getMessage());
         } catch (java.io.IOException ioEx) {  // Generic IO exception
             System.err.println("I/O error while reading ballots file: " + ioEx.getMessage());
+        } catch (java.util.concurrent.CancellationException cancelled) {  // Not an error; the caller asked for it
+            throw cancelled;
         } catch (Exception ex) {  // Most general exception catch
             System.err.println("Unexpected error: " + ex.getMessage());
         }
         return null;
     }
 
-    private List<Map<Character, List<Character>>> makeListOfBallots(ArrayList<String> ballotsFromFile){
-        List<Map<Character, List<Character>>> ballotList = new ArrayList<>();
-        Map<Character, List<Character>> ballot = new TreeMap<>();
-
-        for (String ballotLine : ballotsFromFile) {
-            if (ballotLine.equals("END")) {
-                // Finish current ballot and add to list
-                ballotList.add(ballot);
-                ballot = new TreeMap<>();
-                continue;
+    // Same as makeBallotsFromFile, but reports problems to the caller instead of the console
+    public BallotStore loadBallots(Path path, int parallelism) throws java.io.IOException {
+        if (loadProgress != null) {
+            loadProgress.start(java.nio.file.Files.size(path));
+        }
+        if (!ballotCache) {
+            return parseBallots(path, parallelism);
+        }
+        BallotCache cache = new BallotCache(parallelism);
+        java.nio.file.attribute.FileTime modified = java.nio.file.Files.getLastModifiedTime(path);
+        long size = java.nio.file.Files.size(path);
+        long[] key = cache.key(path);
+        BallotStore cached = cache.load(path, key, offHeapStorage);
+        if (cached != null) {
+            if (loadProgress != null) {
+                loadProgress.advance(loadProgress.getTotalBytes(), cached.ballotCount());
             }
+            return cached;
+        }
+        BallotStore parsed = parseBallots(path, parallelism);
+        if (java.nio.file.Files.size(path) != size || !java.nio.file.Files.getLastModifiedTime(path).equals(modified)) {
+            // The file changed while it was hashed or parsed (e.g. an export still being written),
+            // so the key may not describe these ballots; store nothing rather than a wrong copy
+            return parsed;
+        }
+        try {
+            cache.store(path, key, parsed);
+        } catch (java.io.IOException ioEx) {
+            // The cache only saves time; without it (e.g. in a read-only folder) every load parses
+            System.err.println("Ballot cache not written: " + ioEx.getMessage());
+        }
+        return parsed;
+    }
 
-            // Get the key and values
-            String[] parts = ballotLine.split("\\|");
-            char key = parts[0].trim().charAt(0);
-            String[] tokens = parts[1].trim().split(" ");
-            List<Character> values = new ArrayList<>();
-            for (String token : tokens) {
-                if (!token.isEmpty()) {
-                    values.add(token.charAt(0));
-                }
+    private BallotStore parseBallots(Path path, int parallelism) throws java.io.IOException {
+        if (parallelism > 1) {
+            ParallelBallotLoader loader = new ParallelBallotLoader(parallelism, offHeapStorage);
+            loader.setProgress(loadProgress);
+            return loader.load(path);
+        }
+        // Stream the ballots straight into the packed store
+        BallotStoreSink sink = new BallotStoreSink(offHeapStorage);
+        try {
+            BallotFileParser parser = new BallotFileParser(sink);
+            parser.setProgress(loadProgress);
+            parser.parse(path);
+        } catch (java.io.IOException | RuntimeException failed) {
+            if (sink.getBallotStore() != null) {
+                sink.getBallotStore().close();
             }
-            // Add key, values to the ballot
-            ballot.put(key, values);
+            throw failed;
         }
-        return ballotList;
+        if (sink.getBallotStore() == null) {
+            throw new IllegalArgumentException("No complete ballots found in " + path);
+        }
+        return sink.getBallotStore();
+    }
+
+    // Decodes the file in a single streaming pass, handing each ballot to the sink
+    public void readBallots(Path path, BallotSink sink) throws java.io.IOException {
+        new BallotFileParser(sink).parse(path);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,35 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+// Backing memory for the rank bytes of a BallotStore, one byte per rank of every ballot
+interface RankStorage {
+
+    byte get(int ballot, int rank);
+
+    void set(int ballot, int rank, byte mark);
+
+    // Makes room for at least this many ballots
+    void reserve(int ballots);
+
+    // Copies count ballots of another storage over the same rank count to the given ballot position
+    default void copy(RankStorage source, int count, int at, int rankCount) {
+        for (int ballot = 0; ballot < count; ballot++) {
+            for (int rank = 0; rank < rankCount; rank++) {
+                set(at + ballot, rank, source.get(ballot, rank));
+            }
+        }
+    }
+
+    // Bulk load of whole ballots, starting at the given ballot, from the source's remaining bytes
+    void read(ByteBuffer source, int at);
+
+    // Writes the first count ballots, byte for byte as they are stored
+    void write(WritableByteChannel channel, int count) throws IOException;
+
+    // Gives back memory held outside the Java heap; the storage cannot be used afterwards
+    default void release() {
+    }
+}
@@ -0,0 +1,136 @@
+package model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// Outcome of one round: the counts at its end and what happened during it
+public class RoundResult {
+
+    private final int round;
+    private final Map<Character, Integer> voteCounts;
+    private final List<Character> eliminatedCandidates;
+    private final long[] exhaustedByReason;
+    private final int votesNeededToWin;
+    private final Character winner;
+    private final boolean winnerDecidedByLot;
+    private final List<LotDecision> lotDecisions;
+
+    RoundResult(int round, Map<Character, Integer> voteCounts, List<Character> eliminatedCandidates,
+                long[] exhaustedByReason, int votesNeededToWin, Character winner,
+                boolean winnerDecidedByLot, List<LotDecision> lotDecisions) {
+        this.round = round;
+        this.voteCounts = Collections.unmodifiableMap(voteCounts);
+        this.eliminatedCandidates = List.copyOf(eliminatedCandidates);
+        this.exhaustedByReason = exhaustedByReason.clone();
+        this.votesNeededToWin = votesNeededToWin;
+        this.winner = winner;
+        this.winnerDecidedByLot = winnerDecidedByLot;
+        this.lotDecisions = List.copyOf(lotDecisions);
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    // Votes per continuing candidate, in candidate order
+    public Map<Character, Integer> getVoteCounts() {
+        return voteCounts;
+    }
+
+    // Candidates eliminated at the start of this round (none in round 0)
+    public List<Character> getEliminatedCandidates() {
+        return eliminatedCandidates;
+    }
+
+    // True when several mathematically defeated candidates were eliminated together
+    // (see TabulationEngine.setBatchElimination); a normal round eliminates exactly one
+    public boolean isBatchElimination() {
+        return eliminatedCandidates.size() > 1;
+    }
+
+    // Ballots exhausted during this round for the given reason
+    public long getExhausted(ExhaustionReason reason) {
+        return exhaustedByReason[reason.ordinal()];
+    }
+
+    public long getExhaustedTotal() {
+        long total = 0;
+        for (long exhausted : exhaustedByReason) {
+            total += exhausted;
+        }
+        return total;
+    }
+
+    public int getVotesNeededToWin() {
+        return votesNeededToWin;
+    }
+
+    // null while no candidate has won
+    public Character getWinner() {
+        return winner;
+    }
+
+    public boolean isWinnerDecidedByLot() {
+        return winnerDecidedByLot;
+    }
+
+    public List<LotDecision> getLotDecisions() {
+        return lotDecisions;
+    }
+
+    // The fields of this round as JSON, without the enclosing braces (see TabulationResult.toJson)
+    void appendJson(StringBuilder json) {
+        json.append("\"round\":").append(round).append(",\"votes\":{");
+        boolean first = true;
+        for (Map.Entry<Character, Integer> votes : voteCounts.entrySet()) {
+            json.append(first ? "" : ",");
+            appendCandidate(json, votes.getKey());
+            json.append(':').append(votes.getValue());
+            first = false;
+        }
+        json.append("},\"eliminated\":");
+        appendCandidates(json, eliminatedCandidates);
+        json.append(",\"batchElimination\":").append(isBatchElimination())
+                .append(",\"exhausted\":{");
+        for (ExhaustionReason reason : ExhaustionReason.values()) {
+            json.append(reason.ordinal() == 0 ? "\"" : ",\"").append(reason.name()).append("\":")
+                    .append(getExhausted(reason));
+        }
+        json.append("},\"votesNeeded\":").append(votesNeededToWin).append(",\"winner\":");
+        appendCandidate(json, winner);
+        json.append(",\"lots\":[");
+        for (int l = 0; l < lotDecisions.size(); l++) {
+            LotDecision lot = lotDecisions.get(l);
+            json.append(l == 0 ? "{" : ",{").append("\"tied\":");
+            appendCandidates(json, lot.getTiedCandidates());
+            json.append(",\"selected\":");
+            appendCandidate(json, lot.getSelected());
+            json.append(",\"forWinner\":").append(lot.isForWinner()).append('}');
+        }
+        json.append(']');
+    }
+
+    static void appendCandidates(StringBuilder json, List<Character> candidates) {
+        json.append('[');
+        for (int i = 0; i < candidates.size(); i++) {
+            json.append(i == 0 ? "" : ",");
+            appendCandidate(json, candidates.get(i));
+        }
+        json.append(']');
+    }
+
+    // Candidate letters are single bytes from the ballot file, so only quotes, backslashes and
+    // control characters need escaping
+    static void appendCandidate(StringBuilder json, Character candidate) {
+        if (candidate == null) {
+            json.append("null");
+        } else if (candidate == '"' || candidate == '\\') {
+            json.append("\"\\").append(candidate.charValue()).append('"');
+        } else if (candidate < ' ' || candidate > '~') {
+            json.append(String.format("\"\\u%04x\"", (int) candidate));
+        } else {
+            json.append('"').append(candidate.charValue()).append('"');
+        }
+    }
+}
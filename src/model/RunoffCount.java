@@ -0,0 +1,133 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntToLongFunction;
+
+// What every instant-runoff count shares, however it moves the ballots between rounds: the
+// votes of the continuing candidates, and the rules that decide a round from them. The
+// last-place candidate is eliminated, a candidate with more than the winning threshold of the
+// continuing votes wins, and with two candidates left the one ahead wins; every tie is decided
+// by lot, recorded with the round and reported to the audit listener.
+// Subclasses keep counts and continuingMask up to date and move the ballots.
+abstract class RunoffCount {
+
+    static final double WINNING_THRESHOLD = 0.5; // 50%, i.e., winner needs the majority of votes
+
+    final BallotStore ballotStore;
+    final AuditListener auditListener;
+    LotSource lotSource;
+    private final double winningThreshold;
+    final int[] counts; // votes per candidate index; only continuing candidates are meaningful
+    long continuingMask; // continuing candidates as a bitmask of candidate indices
+    int round; // rounds completed so far
+    int winner; // candidate index, -1 while there is none
+    boolean winnerDecidedByLot;
+    // Lot decisions of the round in progress
+    final List<LotDecision> lotsThisRound;
+
+    RunoffCount(BallotStore ballotStore, AuditListener auditListener, LotSource lotSource,
+                double winningThreshold, int[] counts) {
+        this.ballotStore = ballotStore;
+        this.auditListener = auditListener;
+        this.lotSource = lotSource;
+        this.winningThreshold = winningThreshold;
+        this.counts = counts;
+        this.continuingMask = ballotStore.candidateCount() == 64 ? -1L : (1L << ballotStore.candidateCount()) - 1;
+        this.winner = -1;
+        this.lotsThisRound = new ArrayList<>();
+    }
+
+    // True once a winner is found, or when no candidate is left to eliminate
+    boolean isFinished() {
+        return winner >= 0 || (round > 0 && Long.bitCount(continuingMask) <= 1);
+    }
+
+    // Continuing candidates with the fewest votes, in candidate order
+    static List<Integer> lastPlace(int candidateCount, long continuingMask, IntToLongFunction votes) {
+        long minVote = Long.MAX_VALUE;
+        for (int c = 0; c < candidateCount; c++) {
+            if ((continuingMask & (1L << c)) != 0 && votes.applyAsLong(c) < minVote) {
+                minVote = votes.applyAsLong(c);
+            }
+        }
+        List<Integer> candidatesWithMinVote = new ArrayList<>();
+        for (int c = 0; c < candidateCount; c++) {
+            if ((continuingMask & (1L << c)) != 0 && votes.applyAsLong(c) == minVote) {
+                candidatesWithMinVote.add(c);
+            }
+        }
+        return candidatesWithMinVote;
+    }
+
+    int findCandidateToDrop() {
+        List<Integer> candidatesWithMinVote = lastPlace(counts.length, continuingMask, c -> counts[c]);
+        if (candidatesWithMinVote.size() != 1) {
+            return selectRandomCandidate(candidatesWithMinVote, false);
+        }
+        return candidatesWithMinVote.get(0);
+    }
+
+    void evaluateWinner() {
+        winnerDecidedByLot = false;
+
+        int needed = findVotesNeededToWin();
+
+        // Check for majority winner
+        for (int c = 0; c < counts.length; c++) {
+            if ((continuingMask & (1L << c)) != 0 && counts[c] >= needed) {
+                winner = c;
+                return;
+            }
+        }
+
+        // Resolve the election between last two candidates
+        if (Long.bitCount(continuingMask) == 2) {
+            int first = Long.numberOfTrailingZeros(continuingMask);
+            int second = 63 - Long.numberOfLeadingZeros(continuingMask);
+            if (counts[first] > counts[second]) {
+                winner = first;
+            } else if (counts[second] > counts[first]) {
+                winner = second;
+            } else {
+                // Candidates are tied; decide by lot
+                winner = selectRandomCandidate(List.of(first, second), true);
+                winnerDecidedByLot = true;
+            }
+        }
+    }
+
+    int selectRandomCandidate(List<Integer> tiedCandidates, boolean forWinner) {
+        int selected = tiedCandidates.get(lotSource.choose(tiedCandidates.size()));
+        List<Character> tiedNames = new ArrayList<>();
+        for (int candidate : tiedCandidates) {
+            tiedNames.add(ballotStore.candidate(candidate));
+        }
+        LotDecision decision = new LotDecision(round, tiedNames, ballotStore.candidate(selected), forWinner);
+        lotsThisRound.add(decision);
+        auditListener.tieBrokenByLot(decision);
+        return selected;
+    }
+
+    int findVotesNeededToWin() {
+        long sum = 0;
+        for (int c = 0; c < counts.length; c++) {
+            if ((continuingMask & (1L << c)) != 0) {
+                sum += counts[c];
+            }
+        }
+        return (int) (sum * winningThreshold) + 1; // one greater than the threshold share of the votes
+    }
+
+    Map<Character, Integer> voteCounts() {
+        Map<Character, Integer> voteMap = new TreeMap<>();
+        for (int c = 0; c < counts.length; c++) {
+            if ((continuingMask & (1L << c)) != 0) {
+                voteMap.put(ballotStore.candidate(c), counts[c]);
+            }
+        }
+        return voteMap;
+    }
+}
@@ -0,0 +1,83 @@
+package model;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntPredicate;
+
+// One what-if variant of a contest for ScenarioSweep. A new scenario is the contest as counted
+// by TabulationEngine; every setter changes one rule.
+public class Scenario {
+
+    private final String name;
+    private final Set<Character> withdrawnCandidates;
+    private int skipsToExhaust;
+    private double winningThreshold;
+    private IntPredicate ballotFilter;
+    private long seed;
+
+    public Scenario(String name) {
+        this.name = name;
+        this.withdrawnCandidates = new TreeSet<>();
+        this.skipsToExhaust = BallotStore.SKIPS_TO_EXHAUST;
+        this.winningThreshold = RunoffCount.WINNING_THRESHOLD;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Counts the ballots as if the candidate had never stood: from round 0 on, each ballot goes
+    // to its highest ranked candidate still standing
+    public void withdrawCandidate(char candidate) {
+        withdrawnCandidates.add(candidate);
+    }
+
+    public Set<Character> getWithdrawnCandidates() {
+        return Collections.unmodifiableSet(withdrawnCandidates);
+    }
+
+    // Number of sequential skipped rankings that exhaust a ballot (2 under Maine law);
+    // 0 when skipped rankings never exhaust one
+    public void setSkipsToExhaust(int skipsToExhaust) {
+        if (skipsToExhaust < 0) {
+            throw new IllegalArgumentException("Skips to exhaust cannot be negative");
+        }
+        this.skipsToExhaust = skipsToExhaust;
+    }
+
+    public int getSkipsToExhaust() {
+        return skipsToExhaust;
+    }
+
+    // Share of the continuing votes a candidate must exceed to win, 0.5 for a majority
+    public void setWinningThreshold(double winningThreshold) {
+        if (!(winningThreshold > 0 && winningThreshold < 1)) {
+            throw new IllegalArgumentException("Winning threshold must be between 0 and 1");
+        }
+        this.winningThreshold = winningThreshold;
+    }
+
+    public double getWinningThreshold() {
+        return winningThreshold;
+    }
+
+    // Leaves out every ballot for which the filter is false, e.g. the ballot positions of one
+    // precinct's batch; the filter sees positions in the store, which follow the file order
+    public void setBallotFilter(IntPredicate ballotFilter) {
+        this.ballotFilter = ballotFilter;
+    }
+
+    public IntPredicate getBallotFilter() {
+        return ballotFilter;
+    }
+
+    // Seed for decisions by lot; scenarios with the same seed draw the same lots
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+}
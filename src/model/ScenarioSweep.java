@@ -0,0 +1,71 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Runs many what-if Scenarios of one contest against a single loaded copy of its ballots.
+// The store is sealed and shared by every scenario; each scenario only adds its own counts
+// and a bitmap of the ballots that stopped counting (see ScenarioTabulation), so hundreds of
+// them can run side by side on a pool of at most parallelism threads.
+public class ScenarioSweep {
+
+    private final BallotStore ballotStore;
+    private int parallelism;
+
+    // Seals the store (see BallotStore.seal): it can no longer be added to
+    public ScenarioSweep(BallotStore ballotStore) {
+        ballotStore.seal();
+        this.ballotStore = ballotStore;
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    // Number of scenarios tabulated at the same time
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    // Results by scenario name, in the order given; every name must be different
+    public Map<String, TabulationResult> run(List<Scenario> scenarios) {
+        Set<String> names = new HashSet<>();
+        List<Callable<TabulationResult>> tasks = new ArrayList<>();
+        for (Scenario scenario : scenarios) {
+            if (!names.add(scenario.getName())) {
+                throw new IllegalArgumentException("Duplicate scenario name " + scenario.getName());
+            }
+            tasks.add(() -> tabulate(scenario));
+        }
+        Map<String, TabulationResult> results = new LinkedHashMap<>();
+        String scenario = null;
+        try (ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, Math.max(1, tasks.size())))) {
+            List<Future<TabulationResult>> done = pool.invokeAll(tasks);
+            for (int i = 0; i < done.size(); i++) {
+                scenario = scenarios.get(i).getName();
+                results.put(scenario, done.get(i).get());
+            }
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running scenarios", interrupted);
+        } catch (ExecutionException failed) {
+            throw new IllegalStateException("Scenario " + scenario + " failed", failed.getCause());
+        }
+        return Collections.unmodifiableMap(results);
+    }
+
+    private TabulationResult tabulate(Scenario scenario) {
+        ScenarioTabulation tabulation = new ScenarioTabulation(ballotStore, scenario);
+        List<RoundResult> rounds = new ArrayList<>();
+        do {
+            rounds.add(tabulation.nextRound());
+        } while (!tabulation.isFinished());
+        return new TabulationResult(rounds, tabulation.getIncludedBallots(), scenario.getSeed());
+    }
+}
@@ -0,0 +1,107 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+// Tabulation of one Scenario over a shared, sealed BallotStore, advanced one round at a time.
+// Unlike Tabulation it keeps no ballot piles: every round recounts the ballots still counting
+// against the continuing candidates, so all it holds is the counts and one bitmap of ballots
+// that no longer count (exhausted, or left out by the scenario's filter), however many
+// ballots there are. The rounds are the same as Tabulation's: round 0 counts every first-rank
+// mark, and each later round eliminates the last-place candidate, ties decided by lot, by the
+// same RunoffCount rules. Once candidates are withdrawn, round 0 already counts each ballot for
+// its highest continuing one.
+class ScenarioTabulation extends RunoffCount {
+
+    private final int skipsToExhaust;
+    private final boolean anyWithdrawn;
+    private final BitSet inactive; // exhausted or filtered out
+    private final long includedBallots;
+    // What happened during the round in progress
+    private final long[] exhaustedThisRound;
+    private final List<Character> eliminatedThisRound;
+
+    ScenarioTabulation(BallotStore ballotStore, Scenario scenario) {
+        super(ballotStore, AuditListener.NONE, new LotGenerator(scenario.getSeed()), scenario.getWinningThreshold(),
+                new int[ballotStore.candidateCount()]);
+        this.skipsToExhaust = scenario.getSkipsToExhaust();
+        for (char withdrawn : scenario.getWithdrawnCandidates()) {
+            int index = ballotStore.indexOf(withdrawn);
+            if (index < 0) {
+                throw new IllegalArgumentException(withdrawn + " is not a candidate in scenario " + scenario.getName());
+            }
+            continuingMask &= ~(1L << index);
+        }
+        this.anyWithdrawn = Long.bitCount(continuingMask) < ballotStore.candidateCount();
+        this.inactive = new BitSet();
+        IntPredicate ballotFilter = scenario.getBallotFilter();
+        long included = 0;
+        for (int ballot = 0; ballot < ballotStore.size(); ballot++) {
+            if (ballotFilter != null && !ballotFilter.test(ballot)) {
+                inactive.set(ballot);
+            } else {
+                included += ballotStore.weight(ballot);
+            }
+        }
+        this.includedBallots = included;
+        this.exhaustedThisRound = new long[ExhaustionReason.values().length];
+        this.eliminatedThisRound = new ArrayList<>();
+    }
+
+    // Physical ballots the scenario counts, after its filter
+    long getIncludedBallots() {
+        return includedBallots;
+    }
+
+    RoundResult nextRound() {
+        Arrays.fill(exhaustedThisRound, 0L);
+        eliminatedThisRound.clear();
+        lotsThisRound.clear();
+
+        if (round == 0 && !anyWithdrawn) {
+            countFirstRankings();
+        } else {
+            if (round > 0) {
+                int candidate = findCandidateToDrop();
+                continuingMask &= ~(1L << candidate);
+                eliminatedThisRound.add(ballotStore.candidate(candidate));
+            }
+            recount();
+        }
+        evaluateWinner();
+
+        RoundResult result = new RoundResult(round, voteCounts(), eliminatedThisRound, exhaustedThisRound,
+                findVotesNeededToWin(), winner < 0 ? null : ballotStore.candidate(winner),
+                winnerDecidedByLot, lotsThisRound);
+        round++;
+        return result;
+    }
+
+    private void countFirstRankings() {
+        for (int ballot = inactive.nextClearBit(0); ballot < ballotStore.size(); ballot = inactive.nextClearBit(ballot + 1)) {
+            long firstRank = ballotStore.rankMask(ballot, 0);
+            while (firstRank != 0) {
+                counts[Long.numberOfTrailingZeros(firstRank)] += ballotStore.weight(ballot);
+                firstRank &= firstRank - 1;
+            }
+        }
+    }
+
+    // Counts every ballot still counting for its highest continuing candidate, and retires the
+    // ones that became exhausted
+    private void recount() {
+        Arrays.fill(counts, 0);
+        for (int ballot = inactive.nextClearBit(0); ballot < ballotStore.size(); ballot = inactive.nextClearBit(ballot + 1)) {
+            int target = ballotStore.highestContinuingCandidate(ballot, continuingMask, skipsToExhaust);
+            if (target < 0) {
+                inactive.set(ballot);
+                exhaustedThisRound[ExhaustionReason.fromCode(target).ordinal()] += ballotStore.weight(ballot);
+            } else {
+                counts[target] += ballotStore.weight(ballot);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Headless multi-winner count by single transferable vote with a Droop quota (see
+// StvTabulation), alongside the single-winner TabulationEngine. Reads the same ballot files.
+public class StvEngine {
+
+    private final RCVBallotReader reader;
+    private int seats;
+    private int parallelism;
+    private boolean deduplicateBallots;
+    private Long seed;
+
+    public StvEngine(int seats) {
+        if (seats < 1) {
+            throw new IllegalArgumentException("At least one seat is needed");
+        }
+        this.seats = seats;
+        reader = new RCVBallotReader();
+        parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    public void setSeats(int seats) {
+        if (seats < 1) {
+            throw new IllegalArgumentException("At least one seat is needed");
+        }
+        this.seats = seats;
+    }
+
+    // Seed for eliminations decided by lot; a fresh random seed is used for every run when null
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    // Group identical ballots; surplus transfers then move each ranking pattern once
+    public void setDeduplicateBallots(boolean deduplicateBallots) {
+        this.deduplicateBallots = deduplicateBallots;
+    }
+
+    public void setOffHeapStorage(boolean offHeapStorage) {
+        reader.setOffHeapStorage(offHeapStorage);
+    }
+
+    // Number of threads used to read ballot files
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public StvResult tabulate(Path ballotFile) throws IOException {
+        try (BallotStore ballotStore = reader.loadBallots(ballotFile, parallelism)) {
+            return tabulate(ballotStore);
+        }
+    }
+
+    public StvResult tabulate(BallotStore ballotStore) {
+        BallotStore ballots = deduplicateBallots && !ballotStore.isWeighted() ? ballotStore.deduplicate() : ballotStore;
+        long runSeed = seed != null ? seed : ThreadLocalRandom.current().nextLong();
+        try {
+            StvTabulation tabulation = new StvTabulation(ballots, seats, new LotGenerator(runSeed));
+            List<StvRound> rounds = new ArrayList<>();
+            do {
+                rounds.add(tabulation.nextRound());
+            } while (!tabulation.isFinished());
+            return new StvResult(seats, tabulation.getElected(), rounds, ballots.ballotCount(), runSeed);
+        } finally {
+            if (ballots != ballotStore) {
+                ballots.close(); // the deduplicated copy is ours
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package model;
+
+import java.util.List;
+
+// Every round of one complete single transferable vote count
+public class StvResult {
+
+    private final int seats;
+    private final List<Character> elected;
+    private final List<StvRound> rounds;
+    private final long ballotCount;
+    private final long seed;
+
+    StvResult(int seats, List<Character> elected, List<StvRound> rounds, long ballotCount, long seed) {
+        this.seats = seats;
+        this.elected = List.copyOf(elected);
+        this.rounds = List.copyOf(rounds);
+        this.ballotCount = ballotCount;
+        this.seed = seed;
+    }
+
+    public int getSeats() {
+        return seats;
+    }
+
+    // Elected candidates in order of election; fewer than the seats when too few candidates stood
+    public List<Character> getElected() {
+        return elected;
+    }
+
+    public List<StvRound> getRounds() {
+        return rounds;
+    }
+
+    public long getBallotCount() {
+        return ballotCount;
+    }
+
+    // Droop quota: one more than the valid ballots divided by seats + 1, rounded down
+    public double getQuota() {
+        return rounds.isEmpty() ? 0 : rounds.get(0).getQuota();
+    }
+
+    // Lot seed of this run; StvEngine.setSeed(seed) reproduces every lot decision
+    public long getSeed() {
+        return seed;
+    }
+}
@@ -0,0 +1,83 @@
+package model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Outcome of one round of a single transferable vote count. Votes are reported in ballots and
+// may be fractional; they are exact to 5 decimal places (see StvTabulation.VOTE_SCALE).
+public class StvRound {
+
+    private final int round;
+    private final Map<Character, Double> voteCounts;
+    private final List<Character> electedCandidates;
+    private final List<Character> eliminatedCandidates;
+    private final Character surplusTransferredFrom;
+    private final long[] exhaustedByReason; // in VOTE_SCALE units
+    private final long lostToFractions;
+    private final long quota;
+    private final List<LotDecision> lotDecisions;
+
+    StvRound(int round, Map<Character, Long> votes, List<Character> electedCandidates,
+             List<Character> eliminatedCandidates, Character surplusTransferredFrom, long[] exhaustedByReason,
+             long lostToFractions, long quota, List<LotDecision> lotDecisions) {
+        this.round = round;
+        Map<Character, Double> counts = new LinkedHashMap<>();
+        votes.forEach((candidate, units) -> counts.put(candidate, toBallots(units)));
+        this.voteCounts = Collections.unmodifiableMap(counts);
+        this.electedCandidates = List.copyOf(electedCandidates);
+        this.eliminatedCandidates = List.copyOf(eliminatedCandidates);
+        this.surplusTransferredFrom = surplusTransferredFrom;
+        this.exhaustedByReason = exhaustedByReason.clone();
+        this.lostToFractions = lostToFractions;
+        this.quota = quota;
+        this.lotDecisions = List.copyOf(lotDecisions);
+    }
+
+    static double toBallots(long units) {
+        return (double) units / StvTabulation.VOTE_SCALE;
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    // Votes at the end of the round for every candidate not eliminated, in candidate order;
+    // elected candidates keep the quota once their surplus has moved on
+    public Map<Character, Double> getVoteCounts() {
+        return voteCounts;
+    }
+
+    // Candidates elected at the end of this round, in order of election
+    public List<Character> getElectedCandidates() {
+        return electedCandidates;
+    }
+
+    public List<Character> getEliminatedCandidates() {
+        return eliminatedCandidates;
+    }
+
+    // Elected candidate whose surplus was transferred in this round, or null
+    public Character getSurplusTransferredFrom() {
+        return surplusTransferredFrom;
+    }
+
+    // Votes that stopped counting during this round for the given reason
+    public double getExhausted(ExhaustionReason reason) {
+        return toBallots(exhaustedByReason[reason.ordinal()]);
+    }
+
+    // Part of a transferred surplus dropped by rounding the ballot values down
+    public double getLostToFractions() {
+        return toBallots(lostToFractions);
+    }
+
+    public double getQuota() {
+        return toBallots(quota);
+    }
+
+    public List<LotDecision> getLotDecisions() {
+        return lotDecisions;
+    }
+}
@@ -0,0 +1,250 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// State of one single transferable vote count over a BallotStore, advanced one round at a time.
+// Round 0 gives every ballot to its highest continuing candidate at full value and fixes the
+// Droop quota, floor(valid ballots / (seats + 1)) + 1. Each later round either transfers the
+// largest surplus of an elected candidate, or eliminates the last-place candidate (ties decided
+// by lot) and transfers that candidate's ballots at their current value. Candidates reaching the
+// quota are elected at the end of every round; once no more candidates continue than seats
+// remain, all of them are elected.
+// Votes are fixed-point longs in units of 1/VOTE_SCALE of a ballot. A surplus s out of a total t
+// moves every ballot of the elected candidate's pile on at value * s / t, rounded down (the
+// inclusive Gregory method); what the rounding drops is reported as lost to fractions. Only the
+// pile being transferred is ever walked, apart from the first distribution in round 0.
+// Exhaustion follows the same rules as the single-winner count (see
+// BallotStore.highestContinuingCandidate); elected candidates no longer continue.
+class StvTabulation {
+
+    static final int VOTE_SCALE = 100_000; // 5 decimal places
+
+    private final BallotStore ballotStore;
+    private final int seats;
+    private final LotSource lotSource;
+    private final int[] values; // current value of each ballot, in VOTE_SCALE units
+    private final long[] votes; // per candidate index, in VOTE_SCALE units
+    private final BallotPile[] piles;
+    private long continuingMask;
+    private long eliminatedMask;
+    private final List<Integer> elected; // in order of election
+    private final List<Integer> pendingSurpluses; // elected candidates whose surplus is still to transfer
+    private long quota;
+    private int round;
+    // What happened during the round in progress
+    private final long[] exhaustedThisRound;
+    private long lostThisRound;
+    private final List<Character> electedThisRound;
+    private final List<Character> eliminatedThisRound;
+    private final List<LotDecision> lotsThisRound;
+
+    StvTabulation(BallotStore ballotStore, int seats, LotSource lotSource) {
+        if (seats < 1) {
+            throw new IllegalArgumentException("At least one seat is needed");
+        }
+        this.ballotStore = ballotStore;
+        this.seats = seats;
+        this.lotSource = lotSource;
+        this.values = new int[ballotStore.size()];
+        this.votes = new long[ballotStore.candidateCount()];
+        this.piles = new BallotPile[ballotStore.candidateCount()];
+        this.continuingMask = ballotStore.candidateCount() == 64 ? -1L : (1L << ballotStore.candidateCount()) - 1;
+        this.elected = new ArrayList<>();
+        this.pendingSurpluses = new ArrayList<>();
+        this.exhaustedThisRound = new long[ExhaustionReason.values().length];
+        this.electedThisRound = new ArrayList<>();
+        this.eliminatedThisRound = new ArrayList<>();
+        this.lotsThisRound = new ArrayList<>();
+    }
+
+    int getRound() {
+        return round;
+    }
+
+    long getQuota() {
+        return quota;
+    }
+
+    List<Character> getElected() {
+        List<Character> names = new ArrayList<>();
+        for (int candidate : elected) {
+            names.add(ballotStore.candidate(candidate));
+        }
+        return names;
+    }
+
+    // True once every seat is filled, or when no candidate is left to elect
+    boolean isFinished() {
+        return round > 0 && (elected.size() == seats || continuingMask == 0);
+    }
+
+    StvRound nextRound() {
+        Arrays.fill(exhaustedThisRound, 0L);
+        lostThisRound = 0;
+        electedThisRound.clear();
+        eliminatedThisRound.clear();
+        lotsThisRound.clear();
+        Character surplusFrom = null;
+
+        if (round == 0) {
+            distributeAllBallots();
+        } else if (!pendingSurpluses.isEmpty()) {
+            int candidate = largestPendingSurplus();
+            surplusFrom = ballotStore.candidate(candidate);
+            transferSurplus(candidate);
+        } else if (Long.bitCount(continuingMask) <= seats - elected.size()) {
+            // No more candidates than seats: everyone still standing is elected
+            electAll(continuingMask);
+        } else {
+            eliminate(findCandidateToDrop());
+        }
+        if (!isFull()) {
+            electAll(continuingWithQuota());
+        }
+
+        StvRound result = new StvRound(round, voteCounts(), electedThisRound, eliminatedThisRound, surplusFrom,
+                exhaustedThisRound, lostThisRound, quota, lotsThisRound);
+        round++;
+        return result;
+    }
+
+    private boolean isFull() {
+        return elected.size() == seats;
+    }
+
+    private void distributeAllBallots() {
+        Arrays.fill(values, VOTE_SCALE);
+        for (int c = 0; c < piles.length; c++) {
+            piles[c] = new BallotPile();
+        }
+        long valid = 0;
+        for (int ballot = 0; ballot < ballotStore.size(); ballot++) {
+            if (moveBallot(ballot)) {
+                valid += ballotStore.weight(ballot);
+            }
+        }
+        quota = (valid / (seats + 1) + 1) * VOTE_SCALE;
+    }
+
+    // Gives the ballot, at its current value, to its highest continuing candidate, or exhausts it.
+    // Returns false when it was exhausted.
+    private boolean moveBallot(int ballot) {
+        long amount = (long) ballotStore.weight(ballot) * values[ballot];
+        int target = ballotStore.highestContinuingCandidate(ballot, continuingMask);
+        if (target < 0) {
+            exhaustedThisRound[ExhaustionReason.fromCode(target).ordinal()] += amount;
+            return false;
+        }
+        piles[target].add(ballot);
+        votes[target] += amount;
+        return true;
+    }
+
+    private void transferSurplus(int candidate) {
+        pendingSurpluses.remove(Integer.valueOf(candidate));
+        long total = votes[candidate];
+        long surplus = total - quota;
+        BallotPile pile = piles[candidate];
+        piles[candidate] = null;
+        votes[candidate] = quota;
+        if (surplus <= 0) {
+            return;
+        }
+        long moved = 0;
+        for (int i = 0; i < pile.size(); i++) {
+            int ballot = pile.get(i);
+            // value <= VOTE_SCALE and surplus < total, so only the product can overflow, and only
+            // past several hundred million ballots
+            int value = (int) (Math.multiplyExact((long) values[ballot], surplus) / total);
+            values[ballot] = value;
+            if (value > 0) {
+                moved += (long) ballotStore.weight(ballot) * value;
+                moveBallot(ballot);
+            }
+        }
+        lostThisRound = surplus - moved;
+    }
+
+    private void eliminate(int candidate) {
+        continuingMask &= ~(1L << candidate);
+        eliminatedMask |= 1L << candidate;
+        eliminatedThisRound.add(ballotStore.candidate(candidate));
+        BallotPile pile = piles[candidate];
+        piles[candidate] = null;
+        votes[candidate] = 0;
+        for (int i = 0; i < pile.size(); i++) {
+            moveBallot(pile.get(i));
+        }
+    }
+
+    private long continuingWithQuota() {
+        long reached = 0;
+        for (int c = 0; c < votes.length; c++) {
+            if ((continuingMask & (1L << c)) != 0 && votes[c] >= quota) {
+                reached |= 1L << c;
+            }
+        }
+        return reached;
+    }
+
+    // Elects the given candidates, most votes first (equal votes in candidate order), while seats remain
+    private void electAll(long candidates) {
+        List<Integer> order = new ArrayList<>();
+        for (long rest = candidates; rest != 0; rest &= rest - 1) {
+            order.add(Long.numberOfTrailingZeros(rest));
+        }
+        order.sort((a, b) -> Long.compare(votes[b], votes[a]));
+        for (int candidate : order) {
+            if (isFull()) {
+                break;
+            }
+            continuingMask &= ~(1L << candidate);
+            elected.add(candidate);
+            electedThisRound.add(ballotStore.candidate(candidate));
+            if (votes[candidate] > quota) {
+                pendingSurpluses.add(candidate);
+            }
+        }
+    }
+
+    // Largest surplus first; equal surpluses in order of election
+    private int largestPendingSurplus() {
+        int largest = pendingSurpluses.get(0);
+        for (int candidate : pendingSurpluses) {
+            if (votes[candidate] > votes[largest]) {
+                largest = candidate;
+            }
+        }
+        return largest;
+    }
+
+    // Last place is found as in the single-winner count (see RunoffCount.lastPlace)
+    private int findCandidateToDrop() {
+        List<Integer> candidatesWithMinVote = RunoffCount.lastPlace(votes.length, continuingMask, c -> votes[c]);
+        if (candidatesWithMinVote.size() == 1) {
+            return candidatesWithMinVote.get(0);
+        }
+        int selected = candidatesWithMinVote.get(lotSource.choose(candidatesWithMinVote.size()));
+        List<Character> tiedNames = new ArrayList<>();
+        for (int candidate : candidatesWithMinVote) {
+            tiedNames.add(ballotStore.candidate(candidate));
+        }
+        lotsThisRound.add(new LotDecision(round, tiedNames, ballotStore.candidate(selected), false));
+        return selected;
+    }
+
+    // Votes of every candidate not eliminated, in candidate order
+    private Map<Character, Long> voteCounts() {
+        Map<Character, Long> counts = new LinkedHashMap<>();
+        for (int c = 0; c < votes.length; c++) {
+            if ((eliminatedMask & (1L << c)) == 0) {
+                counts.put(ballotStore.candidate(c), votes[c]);
+            }
+        }
+        return counts;
+    }
+}
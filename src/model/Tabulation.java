@@ -0,0 +1,483 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// State of one instant-runoff tabulation over a BallotStore, advanced one round at a time.
+// Round 0 counts every first-rank mark; each later round eliminates the last-place candidate
+// (ties decided by lot) and transfers that candidate's ballots to their next continuing choice.
+// With batch elimination, a round instead drops every candidate who is mathematically defeated
+// at once (see findDefeatedCandidates).
+// The rules that pick the candidate to eliminate and the winner are RunoffCount's.
+// copy() forks the state cheaply: the store is never copied, and piles and the exhausted set are
+// shared copy-on-write until one side changes them.
+// Given a pool, the ballot walks of a round are split into contiguous ranges that are tallied in
+// parallel, each into its own counts and piles, and merged in range order. Exhaustion is only
+// marked by the workers; the merge then reports it in ballot order, so the result and the audit
+// trail are the same as on one thread.
+class Tabulation extends RunoffCount {
+
+    private static final int MIN_PARALLEL_RANGE = 1 << 15; // ballots per task, below which a thread does not pay off
+    private static final int RANGES_PER_THREAD = 4;
+
+    private ForkJoinPool pool; // null to tally on the calling thread
+    private TabulationMetrics metrics; // null when nobody is measuring
+    private boolean batchElimination;
+    private BitSet exhaustedBallots;
+    private boolean exhaustedShared; // exhaustedBallots belongs to a copy as well
+    private BallotPile[] piles; // ballots currently counted for each candidate, by candidate index
+    // What happened during the round in progress
+    private final long[] exhaustedThisRound;
+    private final List<Character> eliminatedThisRound;
+    // Votes moved from each eliminated candidate to each recipient, at from * candidateCount + to;
+    // only tallied while an audit listener is listening, null otherwise
+    private int[] transfersThisRound;
+    private long leavingMask; // candidates being eliminated in the round in progress
+
+    Tabulation(BallotStore ballotStore, AuditListener auditListener, LotSource lotSource) {
+        super(ballotStore, auditListener, lotSource, WINNING_THRESHOLD, new int[ballotStore.candidateCount()]);
+        this.exhaustedBallots = new BitSet();
+        this.exhaustedThisRound = new long[ExhaustionReason.values().length];
+        this.eliminatedThisRound = new ArrayList<>();
+    }
+
+    private Tabulation(Tabulation source, AuditListener auditListener, LotSource lotSource) {
+        super(source.ballotStore, auditListener, lotSource, WINNING_THRESHOLD, source.counts.clone());
+        this.exhaustedBallots = source.exhaustedBallots;
+        this.exhaustedShared = true;
+        source.exhaustedShared = true;
+        if (source.piles != null) {
+            this.piles = source.piles.clone();
+            for (BallotPile pile : piles) {
+                if (pile != null) {
+                    pile.markShared();
+                }
+            }
+        }
+        this.continuingMask = source.continuingMask;
+        this.batchElimination = source.batchElimination;
+        this.round = source.round;
+        this.winner = source.winner;
+        this.winnerDecidedByLot = source.winnerDecidedByLot;
+        this.exhaustedThisRound = new long[ExhaustionReason.values().length];
+        this.eliminatedThisRound = new ArrayList<>();
+    }
+
+    // Fork of this tabulation between rounds; both sides can carry on independently.
+    // The fork tallies on its own thread until it is given a pool.
+    Tabulation copy(AuditListener auditListener, LotSource lotSource) {
+        return new Tabulation(this, auditListener, lotSource);
+    }
+
+    void setLotSource(LotSource lotSource) {
+        this.lotSource = lotSource;
+    }
+
+    void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Drop all mathematically defeated candidates in one round rather than one per round
+    void setBatchElimination(boolean batchElimination) {
+        this.batchElimination = batchElimination;
+    }
+
+    // Times every phase and round from now on; copies are not measured
+    void setMetrics(TabulationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    int getRound() {
+        return round;
+    }
+
+    // Index of the winning candidate, or -1
+    int getWinnerIndex() {
+        return winner;
+    }
+
+    long getContinuingMask() {
+        return continuingMask;
+    }
+
+    int[] getCounts() {
+        return counts.clone();
+    }
+
+    // Not to be changed by the caller
+    BitSet getExhaustedBallots() {
+        return exhaustedBallots;
+    }
+
+    boolean isWinnerDecidedByLot() {
+        return winnerDecidedByLot;
+    }
+
+    LotSource getLotSource() {
+        return lotSource;
+    }
+
+    // Puts a new tabulation into the state saved after the given number of rounds (see
+    // TabulationCheckpoint). Once a candidate has been eliminated, every ballot that is not
+    // exhausted sits on the pile of its highest continuing candidate, so the piles are rebuilt
+    // from the store in one pass instead of being saved.
+    void restore(int round, long continuingMask, int[] counts, BitSet exhaustedBallots,
+                 int winner, boolean winnerDecidedByLot) {
+        if (this.round != 0) {
+            throw new IllegalStateException("Only a new tabulation can be restored");
+        }
+        this.round = round;
+        this.continuingMask = continuingMask;
+        System.arraycopy(counts, 0, this.counts, 0, this.counts.length);
+        this.exhaustedBallots = exhaustedBallots;
+        this.winner = winner;
+        this.winnerDecidedByLot = winnerDecidedByLot;
+        if (round < 2 || isFinished()) {
+            return; // no elimination yet, or nothing left to transfer
+        }
+        piles = new BallotPile[ballotStore.candidateCount()];
+        for (int c = 0; c < piles.length; c++) {
+            if ((continuingMask & (1L << c)) != 0) {
+                piles[c] = new BallotPile();
+            }
+        }
+        for (int ballot = exhaustedBallots.nextClearBit(0); ballot < ballotStore.size();
+             ballot = exhaustedBallots.nextClearBit(ballot + 1)) {
+            int target = ballotStore.highestContinuingCandidate(ballot, continuingMask);
+            if (target < 0) {
+                throw new IllegalStateException("Checkpoint does not match the ballots (ballot " + ballot + ")");
+            }
+            piles[target].add(ballot);
+        }
+    }
+
+    boolean isWinnerFound() {
+        return winner >= 0;
+    }
+
+    RoundResult nextRound() {
+        Arrays.fill(exhaustedThisRound, 0L);
+        eliminatedThisRound.clear();
+        lotsThisRound.clear();
+
+        long roundStart = metrics == null ? 0 : System.nanoTime();
+        long allocatedBefore = metrics == null ? 0 : TabulationMetrics.allocatedBytes();
+        long transferred = 0;
+        if (round == 0) {
+            countFirstRankings();
+            if (metrics != null) {
+                metrics.recordPhase(TabulationMetrics.Phase.FIRST_COUNT, System.nanoTime() - roundStart, ballotStore.size());
+            }
+        } else if (winner < 0 && Long.bitCount(continuingMask) > 1) {
+            // Round 0 counted overvoted ballots for every candidate they mark, so its counts
+            // cannot prove anyone defeated; batches wait until the piles hold the real counts
+            long defeated = batchElimination && piles != null ? findDefeatedCandidates() : 0;
+            if (Long.bitCount(defeated) < 2) {
+                defeated = 1L << findCandidateToDrop();
+            }
+            if (piles == null) {
+                transferred = ballotStore.size();
+            } else {
+                for (long rest = defeated; rest != 0; rest &= rest - 1) {
+                    transferred += piles[Long.numberOfTrailingZeros(rest)].size();
+                }
+            }
+            long transferStart = metrics == null ? 0 : System.nanoTime();
+            eliminate(defeated);
+            if (metrics != null) {
+                metrics.recordPhase(TabulationMetrics.Phase.TRANSFER, System.nanoTime() - transferStart, transferred);
+            }
+        }
+        long evaluationStart = metrics == null ? 0 : System.nanoTime();
+        evaluateWinner();
+
+        RoundResult result = new RoundResult(round, voteCounts(), eliminatedThisRound, exhaustedThisRound,
+                findVotesNeededToWin(), winner < 0 ? null : ballotStore.candidate(winner),
+                winnerDecidedByLot, lotsThisRound);
+        if (metrics != null) {
+            long roundEnd = System.nanoTime();
+            long allocatedAfter = allocatedBefore < 0 ? -1 : TabulationMetrics.allocatedBytes();
+            metrics.recordPhase(TabulationMetrics.Phase.WINNER_EVALUATION, roundEnd - evaluationStart, 0);
+            metrics.recordRound(round, roundEnd - roundStart,
+                    allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore, transferred, result);
+        }
+        auditListener.roundCompleted(result);
+        round++;
+        return result;
+    }
+
+    private void countFirstRankings() {
+        // Every mark at the first rank counts in round 0
+        for (int[] partial : forEachRange(ballotStore.size(), (from, to) -> {
+            int[] tally = new int[counts.length];
+            for (int ballot = from; ballot < to; ballot++) {
+                long firstRank = ballotStore.rankMask(ballot, 0);
+                while (firstRank != 0) {
+                    tally[Long.numberOfTrailingZeros(firstRank)] += ballotStore.weight(ballot);
+                    firstRank &= firstRank - 1;
+                }
+            }
+            return tally;
+        })) {
+            for (int c = 0; c < counts.length; c++) {
+                counts[c] += partial[c];
+            }
+        }
+    }
+
+    // The first elimination sorts every ballot onto the pile of its highest continuing candidate;
+    // after that only the eliminated candidate's pile moves, because no other ballot's
+    // highest continuing ranking changes when that candidate leaves.
+    // Several candidates leave together in a batch elimination; none of them is continuing while
+    // their piles move, so no ballot passes from one defeated candidate to another.
+    private void eliminate(long candidates) {
+        continuingMask &= ~candidates;
+        leavingMask = candidates;
+        if (auditListener != AuditListener.NONE) {
+            transfersThisRound = new int[counts.length * counts.length];
+        }
+        for (long rest = candidates; rest != 0; rest &= rest - 1) {
+            int candidate = Long.numberOfTrailingZeros(rest);
+            eliminatedThisRound.add(ballotStore.candidate(candidate));
+            auditListener.candidateEliminated(round, ballotStore.candidate(candidate), counts[candidate]);
+        }
+
+        if (piles == null) {
+            distributeAllBallots();
+        } else {
+            for (long rest = candidates; rest != 0; rest &= rest - 1) {
+                int candidate = Long.numberOfTrailingZeros(rest);
+                BallotPile transferred = piles[candidate];
+                piles[candidate] = null;
+                transferBallots(transferred, candidate);
+            }
+        }
+        for (long rest = candidates; rest != 0; rest &= rest - 1) {
+            counts[Long.numberOfTrailingZeros(rest)] = 0;
+        }
+        if (transfersThisRound != null) {
+            reportTransfers(candidates);
+            transfersThisRound = null;
+        }
+    }
+
+    private void reportTransfers(long candidates) {
+        for (long rest = candidates; rest != 0; rest &= rest - 1) {
+            int from = Long.numberOfTrailingZeros(rest);
+            for (int to = 0; to < counts.length; to++) {
+                int votes = transfersThisRound[from * counts.length + to];
+                if (votes > 0) {
+                    auditListener.ballotsTransferred(round, ballotStore.candidate(from), ballotStore.candidate(to), votes);
+                }
+            }
+        }
+    }
+
+    // Eliminated candidate the ballot moves away from: the pile's owner, or, when every ballot is
+    // sorted out at the first elimination, the candidate round 0 counted it for, provided that
+    // was its only first-rank mark and the candidate is leaving. -1 when the ballot is no transfer
+    // (an overvote or a ballot round 0 did not count, which the recount settles).
+    private int transferSource(int ballot, int sourceCandidate) {
+        if (sourceCandidate >= 0) {
+            return sourceCandidate;
+        }
+        long firstRank = ballotStore.rankMask(ballot, 0);
+        if (Long.bitCount(firstRank) == 1 && (firstRank & leavingMask) != 0) {
+            return Long.numberOfTrailingZeros(firstRank);
+        }
+        return -1;
+    }
+
+    private void distributeAllBallots() {
+        // Round 0 counted every first-rank mark, so the piles start from zero
+        piles = new BallotPile[ballotStore.candidateCount()];
+        for (int c = 0; c < counts.length; c++) {
+            counts[c] = 0;
+            if ((continuingMask & (1L << c)) != 0) {
+                piles[c] = new BallotPile();
+            }
+        }
+        transferBallots(null, -1);
+    }
+
+    // Moves each ballot of the pile (every ballot when null) to the pile of its highest continuing
+    // candidate, or exhausts it; sourceCandidate owns the pile, -1 for every ballot
+    private void transferBallots(BallotPile source, int sourceCandidate) {
+        int total = source == null ? ballotStore.size() : source.size();
+        if (rangeCount(total) == 1) {
+            // Not worth splitting; move the ballots straight onto the live piles
+            for (int i = 0; i < total; i++) {
+                transferBallot(source == null ? i : source.get(i), sourceCandidate);
+            }
+            return;
+        }
+        for (Transfers partial : forEachRange(total, (from, to) -> classify(source, sourceCandidate, from, to))) {
+            if (partial.moved != null) {
+                for (int i = 0; i < partial.moved.length; i++) {
+                    transfersThisRound[i] += partial.moved[i];
+                }
+            }
+            for (int c = 0; c < counts.length; c++) {
+                BallotPile moved = partial.piles[c];
+                if (moved == null || moved.size() == 0) {
+                    continue;
+                }
+                counts[c] += partial.counts[c];
+                if (piles[c].size() == 0 && !piles[c].isShared()) {
+                    piles[c] = moved;
+                } else {
+                    if (piles[c].isShared()) {
+                        piles[c] = piles[c].copy();
+                    }
+                    piles[c].addAll(moved);
+                }
+            }
+            for (int i = 0; i < partial.exhausted.size(); i++) {
+                removeExhaustedBallot(partial.exhausted.get(i), ExhaustionReason.fromCode(partial.exhaustedCodes.get(i)));
+            }
+        }
+    }
+
+    private void transferBallot(int ballot, int sourceCandidate) {
+        int target = ballotStore.highestContinuingCandidate(ballot, continuingMask);
+        if (target < 0) {
+            removeExhaustedBallot(ballot, ExhaustionReason.fromCode(target));
+        } else {
+            if (transfersThisRound != null) {
+                int owner = transferSource(ballot, sourceCandidate);
+                if (owner >= 0) {
+                    transfersThisRound[owner * counts.length + target] += ballotStore.weight(ballot);
+                }
+            }
+            BallotPile pile = piles[target];
+            if (pile.isShared()) {
+                pile = pile.copy();
+                piles[target] = pile;
+            }
+            pile.add(ballot);
+            counts[target] += ballotStore.weight(ballot);
+        }
+    }
+
+    // Mark phase for one range: where each ballot goes, without touching the shared state
+    private Transfers classify(BallotPile source, int sourceCandidate, int from, int to) {
+        Transfers transfers = new Transfers(counts.length, continuingMask, transfersThisRound != null);
+        for (int i = from; i < to; i++) {
+            int ballot = source == null ? i : source.get(i);
+            int target = ballotStore.highestContinuingCandidate(ballot, continuingMask);
+            if (target < 0) {
+                transfers.exhausted.add(ballot);
+                transfers.exhaustedCodes.add(target);
+            } else {
+                transfers.piles[target].add(ballot);
+                transfers.counts[target] += ballotStore.weight(ballot);
+                if (transfers.moved != null) {
+                    int owner = transferSource(ballot, sourceCandidate);
+                    if (owner >= 0) {
+                        transfers.moved[owner * counts.length + target] += ballotStore.weight(ballot);
+                    }
+                }
+            }
+        }
+        return transfers;
+    }
+
+    private void removeExhaustedBallot(int ballot, ExhaustionReason reason) {
+        auditListener.ballotExhausted(round, ballot, ballotStore.weight(ballot), reason);
+        if (exhaustedShared) {
+            exhaustedBallots = (BitSet) exhaustedBallots.clone();
+            exhaustedShared = false;
+        }
+        exhaustedBallots.set(ballot);
+        exhaustedThisRound[reason.ordinal()] += ballotStore.weight(ballot);
+    }
+
+    // Runs task over [0, total) in contiguous ranges, on the pool when there is enough work to
+    // share; the results come back in range order
+    private <T> List<T> forEachRange(int total, RangeTask<T> task) {
+        int ranges = rangeCount(total);
+        if (ranges == 1) {
+            return List.of(task.run(0, total));
+        }
+        List<Callable<T>> tasks = new ArrayList<>();
+        for (int r = 0; r < ranges; r++) {
+            int from = (int) ((long) total * r / ranges);
+            int to = (int) ((long) total * (r + 1) / ranges);
+            tasks.add(() -> task.run(from, to));
+        }
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<T> result : pool.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while counting round " + round, interrupted);
+        } catch (ExecutionException failed) {
+            if (failed.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) failed.getCause();
+            }
+            throw new IllegalStateException("Counting round " + round + " failed", failed.getCause());
+        }
+        return results;
+    }
+
+    // The largest group of last-place candidates whose votes together are fewer than those of the
+    // next candidate up: even if every one of their ballots went to one of them, that candidate
+    // would still trail, so none of them can win. Two candidates always stay continuing.
+    private long findDefeatedCandidates() {
+        List<Integer> ascending = new ArrayList<>();
+        for (long rest = continuingMask; rest != 0; rest &= rest - 1) {
+            ascending.add(Long.numberOfTrailingZeros(rest));
+        }
+        ascending.sort((a, b) -> Integer.compare(counts[a], counts[b]));
+        long defeated = 0;
+        long group = 0;
+        long trailing = 0; // combined votes of the candidates in group
+        for (int k = 0; k + 2 < ascending.size(); k++) {
+            group |= 1L << ascending.get(k);
+            trailing += counts[ascending.get(k)];
+            if (trailing < counts[ascending.get(k + 1)]) {
+                defeated = group;
+            }
+        }
+        return defeated;
+    }
+
+    private int rangeCount(int total) {
+        if (pool == null) {
+            return 1;
+        }
+        return (int) Math.max(1, Math.min((long) pool.getParallelism() * RANGES_PER_THREAD, total / MIN_PARALLEL_RANGE));
+    }
+
+    private interface RangeTask<T> {
+        T run(int from, int to);
+    }
+
+    // What one range of ballots contributes to the round
+    private static final class Transfers {
+        private final int[] counts;
+        private final int[] moved; // as transfersThisRound, null when not tallied
+        private final BallotPile[] piles;
+        private final BallotPile exhausted = new BallotPile();
+        private final BallotPile exhaustedCodes = new BallotPile(); // EXHAUSTED_* code per exhausted ballot
+
+        Transfers(int candidateCount, long continuingMask, boolean tallyTransfers) {
+            counts = new int[candidateCount];
+            moved = tallyTransfers ? new int[candidateCount * candidateCount] : null;
+            piles = new BallotPile[candidateCount];
+            for (int c = 0; c < candidateCount; c++) {
+                if ((continuingMask & (1L << c)) != 0) {
+                    piles[c] = new BallotPile();
+                }
+            }
+        }
+    }
+}
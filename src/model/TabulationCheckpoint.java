@@ -0,0 +1,293 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+// Append-only binary log of a tabulation, one record per completed round, so a run that stops
+// part way can carry on from its last round instead of tabulating again from round 0.
+//     header   magic, candidates, rank count, entry count, ballot fingerprint, lot seed, rule flags
+//     record   payload length, CRC-32 of the payload, payload:
+//              round, continuing mask, winner, decided by lot, lot generator state, votes needed,
+//              counts, eliminated candidates, exhausted by reason, lot decisions, exhausted bitmap
+// A record is only trusted when it is complete and its checksum matches; a torn record at the
+// end (from a crash while writing) is cut off before appending resumes. A run only resumes under
+// the rules it started with (see RULE_BATCH_ELIMINATION), so no count mixes two rule sets.
+class TabulationCheckpoint implements Closeable {
+
+    private static final long MAGIC = 0x5243_5643_4B50_5402L; // "RCVCKPT" and format version 2
+    private static final int RECORD_HEADER = 8;
+    private static final byte RULE_BATCH_ELIMINATION = 1; // rule flag bits in the header
+
+    private final FileChannel channel;
+    private final BallotStore ballotStore;
+    private final long seed;
+    private final byte rules;
+    private final List<RoundResult> rounds;
+    private ByteBuffer lastState; // payload of the last valid record, null when there is none
+
+    private TabulationCheckpoint(FileChannel channel, BallotStore ballotStore, long seed, byte rules) {
+        this.channel = channel;
+        this.ballotStore = ballotStore;
+        this.seed = seed;
+        this.rules = rules;
+        this.rounds = new ArrayList<>();
+    }
+
+    // Opens the checkpoint file for these ballots, creating it when it is missing or empty.
+    // The seed is only used for a new file; an existing file keeps the seed it started with, and
+    // must have been written under the same rules.
+    static TabulationCheckpoint open(Path file, BallotStore ballotStore, long seed, boolean batchElimination)
+            throws IOException {
+        byte rules = batchElimination ? RULE_BATCH_ELIMINATION : 0;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < headerSize(ballotStore) && isTornHeader(channel)) {
+                channel.truncate(0); // new file, or the previous run stopped before writing its whole header
+                TabulationCheckpoint checkpoint = new TabulationCheckpoint(channel, ballotStore, seed, rules);
+                checkpoint.writeHeader();
+                return checkpoint;
+            }
+            ByteBuffer header = read(channel, 0, headerSize(ballotStore));
+            if (header == null || header.getLong() != MAGIC) {
+                throw new IllegalArgumentException(file + " is not a tabulation checkpoint, or was written by an older version");
+            }
+            char[] candidates = new char[header.getInt()];
+            if (candidates.length != ballotStore.candidateCount()) {
+                throw new IllegalArgumentException(file + " belongs to a different set of ballots");
+            }
+            for (int c = 0; c < candidates.length; c++) {
+                candidates[c] = header.getChar();
+            }
+            if (!Arrays.equals(candidates, ballotStore.candidates()) || header.getInt() != ballotStore.rankCount()
+                    || header.getInt() != ballotStore.size() || header.getLong() != ballotStore.fingerprint()) {
+                throw new IllegalArgumentException(file + " belongs to a different set of ballots");
+            }
+            long startSeed = header.getLong();
+            if (header.get() != rules) {
+                throw new IllegalArgumentException(file + " was written with batch elimination "
+                        + (batchElimination ? "off" : "on") + "; resume it with the same setting");
+            }
+            TabulationCheckpoint checkpoint = new TabulationCheckpoint(channel, ballotStore, startSeed, rules);
+            checkpoint.readRecords(header.capacity());
+            return checkpoint;
+        } catch (IOException | RuntimeException failed) {
+            channel.close();
+            throw failed;
+        }
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    // Results of the rounds recorded so far
+    List<RoundResult> getRounds() {
+        return List.copyOf(rounds);
+    }
+
+    // Brings a new tabulation to the state after the last recorded round
+    void resume(Tabulation tabulation) {
+        if (lastState == null) {
+            return;
+        }
+        ByteBuffer state = lastState.duplicate();
+        int round = state.getInt();
+        long continuingMask = state.getLong();
+        int winner = state.getInt();
+        boolean winnerDecidedByLot = state.get() != 0;
+        long lotState = state.getLong();
+        state.getInt(); // votes needed
+        int[] counts = new int[ballotStore.candidateCount()];
+        for (int c = 0; c < counts.length; c++) {
+            counts[c] = state.getInt();
+        }
+        skipRoundDetails(state);
+        long[] words = new long[state.getInt()];
+        state.asLongBuffer().get(words);
+        tabulation.restore(round + 1, continuingMask, counts, BitSet.valueOf(words), winner, winnerDecidedByLot);
+        tabulation.setLotSource(new LotGenerator(lotState));
+    }
+
+    // Appends the round the tabulation just finished; the record is on disk when this returns
+    void append(Tabulation tabulation, RoundResult result) throws IOException {
+        long lotState = tabulation.getLotSource() instanceof LotGenerator
+                ? ((LotGenerator) tabulation.getLotSource()).getState() : 0;
+        long[] words = tabulation.getExhaustedBallots().toLongArray();
+        int candidateCount = ballotStore.candidateCount();
+        int size = 4 + 8 + 4 + 1 + 8 + 4 + candidateCount * 4
+                + 4 + result.getEliminatedCandidates().size() * 2
+                + ExhaustionReason.values().length * 8 + 4 + 4 + words.length * 8;
+        for (LotDecision lot : result.getLotDecisions()) {
+            size += 1 + 2 + 4 + lot.getTiedCandidates().size() * 2;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + size);
+        record.position(RECORD_HEADER);
+        record.putInt(result.getRound());
+        record.putLong(tabulation.getContinuingMask());
+        record.putInt(tabulation.getWinnerIndex());
+        record.put((byte) (tabulation.isWinnerDecidedByLot() ? 1 : 0));
+        record.putLong(lotState);
+        record.putInt(result.getVotesNeededToWin());
+        for (int count : tabulation.getCounts()) {
+            record.putInt(count);
+        }
+        record.putInt(result.getEliminatedCandidates().size());
+        for (char eliminated : result.getEliminatedCandidates()) {
+            record.putChar(eliminated);
+        }
+        for (ExhaustionReason reason : ExhaustionReason.values()) {
+            record.putLong(result.getExhausted(reason));
+        }
+        record.putInt(result.getLotDecisions().size());
+        for (LotDecision lot : result.getLotDecisions()) {
+            record.put((byte) (lot.isForWinner() ? 1 : 0));
+            record.putChar(lot.getSelected());
+            record.putInt(lot.getTiedCandidates().size());
+            for (char tied : lot.getTiedCandidates()) {
+                record.putChar(tied);
+            }
+        }
+        record.putInt(words.length);
+        record.asLongBuffer().put(words);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER, size);
+        record.putInt(0, size);
+        record.putInt(4, (int) crc.getValue());
+        record.rewind();
+        long position = channel.size();
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+        channel.force(false);
+        rounds.add(result);
+        lastState = ByteBuffer.wrap(record.array(), RECORD_HEADER, size).slice();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // True when the file is empty or holds the start of a header and nothing else
+    private static boolean isTornHeader(FileChannel channel) throws IOException {
+        int length = (int) Math.min(channel.size(), 8);
+        ByteBuffer start = read(channel, 0, length);
+        ByteBuffer magic = ByteBuffer.allocate(8).putLong(MAGIC).flip();
+        return start.equals(magic.limit(length));
+    }
+
+    private static int headerSize(BallotStore ballotStore) {
+        return 8 + 4 + ballotStore.candidateCount() * 2 + 4 + 4 + 8 + 8 + 1;
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(headerSize(ballotStore));
+        header.putLong(MAGIC);
+        header.putInt(ballotStore.candidateCount());
+        for (char candidate : ballotStore.candidates()) {
+            header.putChar(candidate);
+        }
+        header.putInt(ballotStore.rankCount());
+        header.putInt(ballotStore.size());
+        header.putLong(ballotStore.fingerprint());
+        header.putLong(seed);
+        header.put(rules);
+        header.flip();
+        channel.write(header, 0);
+        channel.force(false);
+    }
+
+    private void readRecords(long position) throws IOException {
+        long end = channel.size();
+        while (position + RECORD_HEADER <= end) {
+            ByteBuffer recordHeader = read(channel, position, RECORD_HEADER);
+            int size = recordHeader.getInt();
+            int expectedCrc = recordHeader.getInt();
+            if (size <= 0 || position + RECORD_HEADER + size > end) {
+                break;
+            }
+            ByteBuffer payload = read(channel, position + RECORD_HEADER, size);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != expectedCrc) {
+                break;
+            }
+            rounds.add(toRoundResult(payload.duplicate()));
+            lastState = payload;
+            position += RECORD_HEADER + size;
+        }
+        channel.truncate(position); // drop a torn last record, if any
+    }
+
+    private RoundResult toRoundResult(ByteBuffer state) {
+        int round = state.getInt();
+        long continuingMask = state.getLong();
+        int winner = state.getInt();
+        boolean winnerDecidedByLot = state.get() != 0;
+        state.getLong(); // lot generator state
+        int votesNeeded = state.getInt();
+        Map<Character, Integer> voteCounts = new TreeMap<>();
+        for (int c = 0; c < ballotStore.candidateCount(); c++) {
+            int count = state.getInt();
+            if ((continuingMask & (1L << c)) != 0) {
+                voteCounts.put(ballotStore.candidate(c), count);
+            }
+        }
+        List<Character> eliminated = new ArrayList<>();
+        for (int i = state.getInt(); i > 0; i--) {
+            eliminated.add(state.getChar());
+        }
+        long[] exhausted = new long[ExhaustionReason.values().length];
+        for (int r = 0; r < exhausted.length; r++) {
+            exhausted[r] = state.getLong();
+        }
+        List<LotDecision> lots = new ArrayList<>();
+        for (int i = state.getInt(); i > 0; i--) {
+            boolean forWinner = state.get() != 0;
+            char selected = state.getChar();
+            List<Character> tied = new ArrayList<>();
+            for (int t = state.getInt(); t > 0; t--) {
+                tied.add(state.getChar());
+            }
+            lots.add(new LotDecision(round, tied, selected, forWinner));
+        }
+        return new RoundResult(round, voteCounts, eliminated, exhausted, votesNeeded,
+                winner < 0 ? null : ballotStore.candidate(winner), winnerDecidedByLot, lots);
+    }
+
+    // Moves past the eliminated candidates, exhaustion totals and lot decisions
+    private static void skipRoundDetails(ByteBuffer state) {
+        int eliminated = state.getInt();
+        state.position(state.position() + eliminated * 2 + ExhaustionReason.values().length * 8);
+        for (int i = state.getInt(); i > 0; i--) {
+            state.position(state.position() + 1 + 2);
+            int tied = state.getInt();
+            state.position(state.position() + tied * 2);
+        }
+    }
+
+    // Reads exactly length bytes at position, or returns null when the file ends first
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,149 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Headless entry point to the tabulation: runs every round of an election in one call and
+// returns the structured result. Depends on nothing from AWT or Swing, so it can be driven
+// from scripts, batch jobs and servers.
+public class TabulationEngine {
+
+    private final RCVBallotReader reader;
+    private boolean deduplicateBallots;
+    private int parallelism;
+    private AuditListener auditListener;
+    private Long seed;
+    private Path checkpointFile;
+    private TabulationMetrics metrics;
+    private boolean batchElimination;
+
+    public TabulationEngine() {
+        reader = new RCVBallotReader();
+        parallelism = Runtime.getRuntime().availableProcessors();
+        auditListener = AuditListener.NONE;
+    }
+
+    // Seed for decisions by lot, so a run can be reproduced exactly; a fresh random seed is used
+    // for every run when null (see TabulationResult.getSeed)
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    // Records every finished round in this file, and carries on from the last recorded round when
+    // the file already holds part of a run over the same ballots (see TabulationCheckpoint).
+    // A resumed run keeps its original lot seed. It cannot be resumed with an audit listener, as
+    // the listener would never hear about the recorded rounds.
+    public void setCheckpointFile(Path checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    // Collects the time spent in each phase and round of every run; nothing is measured when null
+    public void setMetrics(TabulationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Receives exhausted ballots, eliminations and lot decisions; nothing is reported by default
+    public void setAuditListener(AuditListener auditListener) {
+        this.auditListener = auditListener == null ? AuditListener.NONE : auditListener;
+    }
+
+    // Eliminate every mathematically defeated candidate in one round: all of the last-place
+    // candidates whose votes together are fewer than the next candidate's. The winner is the same
+    // as with one elimination per round, in fewer rounds. The first elimination is always a single
+    // one, as round 0 counts overvotes for every candidate they mark. Off by default, as not every
+    // jurisdiction's rules allow it
+    public void setBatchElimination(boolean batchElimination) {
+        this.batchElimination = batchElimination;
+    }
+
+    // Group identical ballots and tabulate the distinct ranking patterns by weight
+    public void setDeduplicateBallots(boolean deduplicateBallots) {
+        this.deduplicateBallots = deduplicateBallots;
+    }
+
+    // Keep ballots read from files outside the Java heap (see RCVBallotReader.setOffHeapStorage)
+    public void setOffHeapStorage(boolean offHeapStorage) {
+        reader.setOffHeapStorage(offHeapStorage);
+    }
+
+    // Reuse compiled copies of ballot files (see RCVBallotReader.setBallotCache)
+    public void setBallotCache(boolean ballotCache) {
+        reader.setBallotCache(ballotCache);
+    }
+
+    // Number of threads used to read ballot files and to count each round
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public TabulationResult tabulate(Path ballotFile) throws IOException {
+        if (metrics != null) {
+            metrics.startRun();
+        }
+        long loadStart = System.nanoTime();
+        try (BallotStore ballotStore = reader.loadBallots(ballotFile, parallelism)) {
+            if (metrics != null) {
+                metrics.recordPhase(TabulationMetrics.Phase.LOAD, System.nanoTime() - loadStart, ballotStore.ballotCount());
+            }
+            return run(ballotStore);
+        }
+    }
+
+    public TabulationResult tabulate(BallotStore ballotStore) {
+        if (metrics != null) {
+            metrics.startRun();
+        }
+        return run(ballotStore);
+    }
+
+    private TabulationResult run(BallotStore ballotStore) {
+        long dedupStart = System.nanoTime();
+        BallotStore ballots = deduplicateBallots && !ballotStore.isWeighted() ? ballotStore.deduplicate() : ballotStore;
+        if (metrics != null && ballots != ballotStore) {
+            metrics.recordPhase(TabulationMetrics.Phase.LOAD, System.nanoTime() - dedupStart, 0);
+        }
+        long runSeed = seed != null ? seed : ThreadLocalRandom.current().nextLong();
+        try (ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+             TabulationCheckpoint checkpoint = checkpointFile == null ? null
+                     : TabulationCheckpoint.open(checkpointFile, ballots, runSeed, batchElimination)) {
+            if (checkpoint != null) {
+                if (!checkpoint.getRounds().isEmpty() && auditListener != AuditListener.NONE) {
+                    throw new IllegalStateException("Checkpoint " + checkpointFile + " already holds "
+                            + checkpoint.getRounds().size() + " rounds, which would be missing from the audit trail");
+                }
+                runSeed = checkpoint.getSeed();
+            }
+            Tabulation tabulation = new Tabulation(ballots, auditListener, new LotGenerator(runSeed));
+            tabulation.setPool(pool);
+            tabulation.setMetrics(metrics);
+            tabulation.setBatchElimination(batchElimination);
+            List<RoundResult> rounds = new ArrayList<>();
+            if (checkpoint != null) {
+                checkpoint.resume(tabulation);
+                rounds.addAll(checkpoint.getRounds());
+            }
+            while (!tabulation.isFinished()) {
+                RoundResult round = tabulation.nextRound();
+                if (checkpoint != null) {
+                    checkpoint.append(tabulation, round);
+                }
+                rounds.add(round);
+            }
+            if (metrics != null) {
+                metrics.finishRun(ballots);
+            }
+            return new TabulationResult(rounds, ballots.ballotCount(), runSeed);
+        } catch (IOException ioEx) {
+            throw new UncheckedIOException("Cannot use checkpoint " + checkpointFile, ioEx);
+        } finally {
+            if (ballots != ballotStore) {
+                ballots.close(); // the deduplicated copy is ours
+            }
+        }
+    }
+}
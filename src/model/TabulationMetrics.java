@@ -0,0 +1,273 @@
+package model;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Where the time of a tabulation run goes. TabulationEngine and Tabulation record the wall time
+// and the number of ballots handled by each phase, and per round the time, the bytes allocated
+// in the JVM and the ballots exhausted for each reason. Phases are timed as a whole, never per
+// ballot, so collecting metrics costs next to nothing.
+// One object follows one run at a time and starts over with the next; the MBean view shows
+// the last completed run, and toJson() gives the same figures as a machine-readable report.
+public class TabulationMetrics implements TabulationMetricsMBean {
+
+    public enum Phase {
+        LOAD("load"),                           // reading the ballot file, and deduplicating it when asked
+        FIRST_COUNT("firstCount"),              // counting first-rank marks in round 0
+        TRANSFER("transfer"),                   // moving ballots to continuing candidates, exhausting the rest
+        WINNER_EVALUATION("winnerEvaluation");  // checking for a majority, or a final tie
+
+        private final String key;
+
+        Phase(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean
+                    ? (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean() : null;
+
+    // The run in progress
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final long[] phaseBallots = new long[Phase.values().length];
+    private final List<long[]> rounds = new ArrayList<>(); // see ROUND_* below
+    private long runStart;
+    private long ballotCount;
+    private int candidateCount;
+
+    private static final int ROUND_NUMBER = 0;
+    private static final int ROUND_NANOS = 1;
+    private static final int ROUND_ALLOCATED = 2;
+    private static final int ROUND_TRANSFERRED = 3;
+    private static final int ROUND_EXHAUSTED = 4; // one slot per ExhaustionReason from here
+
+    // The last completed run
+    private String lastReport = "{}";
+    private long[] lastPhaseNanos = new long[Phase.values().length];
+    private long[] lastPhaseBallots = new long[Phase.values().length];
+    private long lastRunNanos;
+    private long lastRunBallots;
+    private long lastRunAllocated;
+    private long[] lastExhausted = new long[ExhaustionReason.values().length];
+    private long runsCompleted;
+    private long totalRunNanos;
+    private ObjectName registeredName; // while visible to JMX clients
+
+    // Makes the metrics visible to JMX clients such as JConsole as model:type=TabulationMetrics,name=<name>
+    public synchronized void registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName("model:type=TabulationMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            registeredName = objectName;
+        } catch (JMException jmEx) {
+            throw new IllegalStateException("Cannot register metrics MBean " + name, jmEx);
+        }
+    }
+
+    // Takes the MBean away from JMX clients again; nothing happens when it is not registered
+    public synchronized void unregisterMBean() {
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException jmEx) {
+            throw new IllegalStateException("Cannot unregister metrics MBean " + registeredName, jmEx);
+        } finally {
+            registeredName = null;
+        }
+    }
+
+    synchronized void startRun() {
+        Arrays.fill(phaseNanos, 0L);
+        Arrays.fill(phaseBallots, 0L);
+        rounds.clear();
+        runStart = System.nanoTime();
+        ballotCount = 0;
+        candidateCount = 0;
+    }
+
+    synchronized void recordPhase(Phase phase, long nanos, long ballots) {
+        phaseNanos[phase.ordinal()] += nanos;
+        phaseBallots[phase.ordinal()] += ballots;
+    }
+
+    synchronized void recordRound(int round, long nanos, long allocatedBytes, long transferred, RoundResult result) {
+        long[] figures = new long[ROUND_EXHAUSTED + ExhaustionReason.values().length];
+        figures[ROUND_NUMBER] = round;
+        figures[ROUND_NANOS] = nanos;
+        figures[ROUND_ALLOCATED] = allocatedBytes;
+        figures[ROUND_TRANSFERRED] = transferred;
+        for (ExhaustionReason reason : ExhaustionReason.values()) {
+            figures[ROUND_EXHAUSTED + reason.ordinal()] = result.getExhausted(reason);
+        }
+        rounds.add(figures);
+    }
+
+    synchronized void finishRun(BallotStore ballotStore) {
+        long nanos = System.nanoTime() - runStart;
+        ballotCount = ballotStore.ballotCount();
+        candidateCount = ballotStore.candidateCount();
+        lastPhaseNanos = phaseNanos.clone();
+        lastPhaseBallots = phaseBallots.clone();
+        lastRunNanos = nanos;
+        lastRunBallots = ballotCount;
+        lastRunAllocated = 0;
+        lastExhausted = new long[ExhaustionReason.values().length];
+        for (long[] round : rounds) {
+            lastRunAllocated += Math.max(0, round[ROUND_ALLOCATED]);
+            for (int r = 0; r < lastExhausted.length; r++) {
+                lastExhausted[r] += round[ROUND_EXHAUSTED + r];
+            }
+        }
+        lastReport = buildReport();
+        runsCompleted++;
+        totalRunNanos += nanos;
+    }
+
+    // Bytes allocated by all threads of the JVM so far, or -1 when the JVM cannot tell
+    static long allocatedBytes() {
+        return THREADS != null && THREADS.isThreadAllocatedMemoryEnabled() ? THREADS.getTotalThreadAllocatedBytes() : -1;
+    }
+
+    public synchronized String toJson() {
+        return lastReport;
+    }
+
+    public void writeReport(Path file) throws IOException {
+        Files.writeString(file, toJson() + System.lineSeparator(), StandardCharsets.UTF_8);
+    }
+
+    private String buildReport() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"ballots\":").append(ballotCount)
+                .append(",\"candidates\":").append(candidateCount)
+                .append(",\"millis\":").append(millis(lastRunNanos))
+                .append(",\"phases\":{");
+        for (Phase phase : Phase.values()) {
+            int p = phase.ordinal();
+            json.append(p == 0 ? "" : ",").append('"').append(phase.getKey()).append("\":{")
+                    .append("\"millis\":").append(millis(phaseNanos[p]))
+                    .append(",\"ballots\":").append(phaseBallots[p])
+                    .append(",\"ballotsPerSecond\":").append(perSecond(phaseBallots[p], phaseNanos[p]))
+                    .append('}');
+        }
+        json.append("},\"rounds\":[");
+        for (int i = 0; i < rounds.size(); i++) {
+            long[] round = rounds.get(i);
+            json.append(i == 0 ? "" : ",").append("{\"round\":").append(round[ROUND_NUMBER])
+                    .append(",\"millis\":").append(millis(round[ROUND_NANOS]))
+                    .append(",\"allocatedBytes\":").append(round[ROUND_ALLOCATED])
+                    .append(",\"ballotsTransferred\":").append(round[ROUND_TRANSFERRED])
+                    .append(",\"exhausted\":");
+            appendExhausted(json, round, ROUND_EXHAUSTED);
+            json.append('}');
+        }
+        json.append("],\"exhausted\":");
+        appendExhausted(json, lastExhausted, 0);
+        return json.append('}').toString();
+    }
+
+    private static void appendExhausted(StringBuilder json, long[] figures, int offset) {
+        json.append('{');
+        for (ExhaustionReason reason : ExhaustionReason.values()) {
+            json.append(reason.ordinal() == 0 ? "" : ",").append('"').append(reason.name()).append("\":")
+                    .append(figures[offset + reason.ordinal()]);
+        }
+        json.append('}');
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1e3) / 1e3;
+    }
+
+    private static long perSecond(long ballots, long nanos) {
+        return nanos == 0 ? 0 : Math.round(ballots * 1e9 / nanos);
+    }
+
+    @Override
+    public synchronized long getRunsCompleted() {
+        return runsCompleted;
+    }
+
+    @Override
+    public synchronized long getLastRunBallots() {
+        return lastRunBallots;
+    }
+
+    @Override
+    public synchronized double getLastRunMillis() {
+        return millis(lastRunNanos);
+    }
+
+    @Override
+    public synchronized double getLastLoadMillis() {
+        return millis(lastPhaseNanos[Phase.LOAD.ordinal()]);
+    }
+
+    @Override
+    public synchronized double getLastFirstCountMillis() {
+        return millis(lastPhaseNanos[Phase.FIRST_COUNT.ordinal()]);
+    }
+
+    @Override
+    public synchronized double getLastTransferMillis() {
+        return millis(lastPhaseNanos[Phase.TRANSFER.ordinal()]);
+    }
+
+    @Override
+    public synchronized double getLastWinnerEvaluationMillis() {
+        return millis(lastPhaseNanos[Phase.WINNER_EVALUATION.ordinal()]);
+    }
+
+    // Ballots handled per second across the counting and transfer phases
+    @Override
+    public synchronized double getLastBallotsPerSecond() {
+        int first = Phase.FIRST_COUNT.ordinal();
+        int transfer = Phase.TRANSFER.ordinal();
+        return perSecond(lastPhaseBallots[first] + lastPhaseBallots[transfer], lastPhaseNanos[first] + lastPhaseNanos[transfer]);
+    }
+
+    @Override
+    public synchronized long getLastRunAllocatedBytes() {
+        return lastRunAllocated;
+    }
+
+    @Override
+    public synchronized long getLastExhaustedOvervote() {
+        return lastExhausted[ExhaustionReason.OVERVOTE.ordinal()];
+    }
+
+    @Override
+    public synchronized long getLastExhaustedSkippedRankings() {
+        return lastExhausted[ExhaustionReason.SKIPPED_RANKINGS.ordinal()];
+    }
+
+    @Override
+    public synchronized long getLastExhaustedNoContinuingCandidate() {
+        return lastExhausted[ExhaustionReason.NO_CONTINUING_CANDIDATE.ordinal()];
+    }
+
+    @Override
+    public synchronized double getTotalRunMillis() {
+        return millis(totalRunNanos);
+    }
+
+    @Override
+    public synchronized String getLastReport() {
+        return lastReport;
+    }
+}
@@ -0,0 +1,34 @@
+package model;
+
+// JMX view of TabulationMetrics: the last completed run, plus totals since start-up
+public interface TabulationMetricsMBean {
+
+    long getRunsCompleted();
+
+    long getLastRunBallots();
+
+    double getLastRunMillis();
+
+    double getLastLoadMillis();
+
+    double getLastFirstCountMillis();
+
+    double getLastTransferMillis();
+
+    double getLastWinnerEvaluationMillis();
+
+    double getLastBallotsPerSecond();
+
+    long getLastRunAllocatedBytes();
+
+    long getLastExhaustedOvervote();
+
+    long getLastExhaustedSkippedRankings();
+
+    long getLastExhaustedNoContinuingCandidate();
+
+    double getTotalRunMillis();
+
+    // The last run as a JSON document
+    String getLastReport();
+}
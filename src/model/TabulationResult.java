@@ -0,0 +1,76 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Every round of one complete tabulation
+public class TabulationResult {
+
+    private final List<RoundResult> rounds;
+    private final long ballotCount;
+    private final long seed;
+
+    TabulationResult(List<RoundResult> rounds, long ballotCount, long seed) {
+        this.rounds = List.copyOf(rounds);
+        this.ballotCount = ballotCount;
+        this.seed = seed;
+    }
+
+    public List<RoundResult> getRounds() {
+        return rounds;
+    }
+
+    public long getBallotCount() {
+        return ballotCount;
+    }
+
+    // Lot seed of this run; TabulationEngine.setSeed(seed) reproduces every lot decision
+    public long getSeed() {
+        return seed;
+    }
+
+    // null when the ballots elect nobody (e.g. every ballot exhausted)
+    public Character getWinner() {
+        return rounds.isEmpty() ? null : rounds.get(rounds.size() - 1).getWinner();
+    }
+
+    public boolean isWinnerDecidedByLot() {
+        return !rounds.isEmpty() && rounds.get(rounds.size() - 1).isWinnerDecidedByLot();
+    }
+
+    public long getExhausted(ExhaustionReason reason) {
+        long total = 0;
+        for (RoundResult round : rounds) {
+            total += round.getExhausted(reason);
+        }
+        return total;
+    }
+
+    public List<LotDecision> getLotDecisions() {
+        List<LotDecision> decisions = new ArrayList<>();
+        for (RoundResult round : rounds) {
+            decisions.addAll(round.getLotDecisions());
+        }
+        return decisions;
+    }
+
+    // Every round as one JSON document, for dashboards and other programs:
+    //     {"ballots":..,"seed":..,"winner":"A"|null,"winnerDecidedByLot":..,"rounds":[{"round":..,
+    //      "votes":{"A":..},"eliminated":[..],"batchElimination":..,"exhausted":{"OVERVOTE":..},
+    //      "votesNeeded":..,"winner":..,"lots":[{"tied":[..],"selected":..,"forWinner":..}]}]}
+    public String toJson() {
+        StringBuilder json = new StringBuilder(256 + rounds.size() * 256);
+        json.append("{\"ballots\":").append(ballotCount)
+                .append(",\"seed\":").append(seed)
+                .append(",\"winner\":");
+        RoundResult.appendCandidate(json, getWinner());
+        json.append(",\"winnerDecidedByLot\":").append(isWinnerDecidedByLot())
+                .append(",\"rounds\":[");
+        for (int i = 0; i < rounds.size(); i++) {
+            json.append(i == 0 ? "{" : ",{");
+            rounds.get(i).appendJson(json);
+            json.append('}');
+        }
+        return json.append("]}").toString();
+    }
+}
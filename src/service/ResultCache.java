@@ -0,0 +1,90 @@
+package service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded least-recently-used cache of finished results. A result still being computed is
+// already in the cache as a pending future, so requests for the same key that arrive meanwhile
+// wait for that one computation instead of starting their own. A computation that fails is
+// dropped again, so the next request retries it.
+class ResultCache {
+
+    private final int capacity;
+    private final Map<String, CompletableFuture<byte[]>> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    ResultCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The cache must hold at least one result");
+        }
+        this.capacity = capacity;
+        // Access order: every get moves the entry to the end, so the eldest is the least recently used
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<byte[]>> eldest) {
+                return size() > ResultCache.this.capacity;
+            }
+        };
+    }
+
+    // The cached result for this key, computed by the caller's thread when nobody has it yet.
+    // Whatever the computation throws is rethrown to every request waiting for it.
+    byte[] get(String key, Callable<byte[]> computation) throws Exception {
+        CompletableFuture<byte[]> result;
+        boolean computeHere = false;
+        synchronized (entries) {
+            result = entries.get(key);
+            if (result == null) {
+                result = new CompletableFuture<>();
+                entries.put(key, result);
+                computeHere = true;
+            }
+        }
+        if (!computeHere) {
+            hits.incrementAndGet();
+            try {
+                return result.get();
+            } catch (ExecutionException failed) {
+                if (failed.getCause() instanceof Error) {
+                    throw (Error) failed.getCause();
+                }
+                throw (Exception) failed.getCause();
+            }
+        }
+        misses.incrementAndGet();
+        try {
+            byte[] value = computation.call();
+            result.complete(value);
+            return value;
+        } catch (Exception | Error failed) {
+            synchronized (entries) {
+                entries.remove(key, result);
+            }
+            result.completeExceptionally(failed);
+            throw failed;
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+}
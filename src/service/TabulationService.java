@@ -0,0 +1,375 @@
+package service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import model.TabulationEngine;
+import model.TabulationMetrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+// Embedded HTTP front end to the headless engine, for dashboards and other programs:
+//     POST /tabulate             tabulates the ballot file sent as the request body
+//     GET  /tabulate?file=<path> tabulates a ballot file below the service's ballot directory
+//     GET  /health               cache and load figures
+// Both /tabulate forms take the rule options seed=<long> and batchElimination=true, and
+// dedup=true to group identical ballots first, and answer with TabulationResult.toJson.
+// Every request runs on its own virtual thread. Results are kept in an LRU cache keyed by the
+// SHA-256 of the ballot file and the rule options, so a dashboard refreshing the same result
+// is answered from memory; only cache misses count ballots, at most a few at a time.
+// Without a seed, the lots of the first run are the ones cached for that file.
+// Each of the tabulations that may run at once has its own TabulationMetrics, visible in
+// JConsole as model:type=TabulationMetrics,name="tabulation service <port> #<n>" while the
+// service runs; each shows the last count it ran.
+public class TabulationService {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path ballotRoot;
+    private final ResultCache cache;
+    // Content hash of each server-side file by path, valid while its size and modification time
+    // hold. A hash still being computed is already here, so requests for a new or changed file
+    // wait for one read of it instead of each reading the whole file.
+    private final Map<Path, FileHash> fileHashes = new ConcurrentHashMap<>();
+    private long maxUploadBytes = 1L << 30;
+    private int maxConcurrentTabulations = 2;
+    private Semaphore tabulations;
+    // Metrics of the tabulations not running; a tabulation holding a permit always finds one
+    private Queue<TabulationMetrics> idleMetrics;
+    private List<TabulationMetrics> allMetrics;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    // Serves files below ballotRoot and keeps at most cacheSize results
+    public TabulationService(Path ballotRoot, int cacheSize) throws IOException {
+        this.ballotRoot = ballotRoot.toRealPath();
+        this.cache = new ResultCache(cacheSize);
+    }
+
+    // Larger uploads are refused with 413
+    public void setMaxUploadBytes(long maxUploadBytes) {
+        this.maxUploadBytes = maxUploadBytes;
+    }
+
+    // Cache misses tabulated at the same time; each one gets an equal share of the processors
+    public void setMaxConcurrentTabulations(int maxConcurrentTabulations) {
+        this.maxConcurrentTabulations = Math.max(1, maxConcurrentTabulations);
+    }
+
+    // Port 0 picks a free port; returns the address actually bound
+    public InetSocketAddress start(InetSocketAddress address) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("The service is already running");
+        }
+        tabulations = new Semaphore(maxConcurrentTabulations);
+        server = HttpServer.create(address, 0);
+        registerMetrics(server.getAddress().getPort());
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.createContext("/tabulate", this::handleTabulate);
+        server.createContext("/health", this::handleHealth);
+        server.setExecutor(executor);
+        server.start();
+        return server.getAddress();
+    }
+
+    // Stops accepting requests and waits for those in progress
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.close();
+            server = null;
+            unregisterMetrics();
+        }
+    }
+
+    private void registerMetrics(int port) {
+        idleMetrics = new ConcurrentLinkedQueue<>();
+        allMetrics = new ArrayList<>();
+        try {
+            for (int n = 1; n <= maxConcurrentTabulations; n++) {
+                TabulationMetrics metrics = new TabulationMetrics();
+                allMetrics.add(metrics);
+                idleMetrics.add(metrics);
+                metrics.registerMBean("tabulation service " + port + " #" + n);
+            }
+        } catch (IllegalStateException taken) {
+            unregisterMetrics();
+            server.stop(0);
+            server = null;
+            throw taken;
+        }
+    }
+
+    private void unregisterMetrics() {
+        for (TabulationMetrics metrics : allMetrics) {
+            metrics.unregisterMBean();
+        }
+    }
+
+    private void handleTabulate(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            try {
+                Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                Options options = new Options(query);
+                byte[] json;
+                if (exchange.getRequestMethod().equals("POST")) {
+                    json = tabulateUpload(exchange, options);
+                } else if (exchange.getRequestMethod().equals("GET") && query.containsKey("file")) {
+                    json = tabulateFile(resolve(query.get("file")), options);
+                } else if (exchange.getRequestMethod().equals("GET")) {
+                    throw new RequestException(400, "Missing file parameter");
+                } else {
+                    throw new RequestException(405, "Use GET with a file parameter or POST a ballot file");
+                }
+                send(exchange, 200, json);
+            } catch (RequestException refused) {
+                sendError(exchange, refused.status, refused.getMessage());
+            } catch (IllegalArgumentException badBallots) {
+                sendError(exchange, 400, badBallots.getMessage());
+            } catch (NoSuchFileException missing) {
+                sendError(exchange, 404, "No such file: " + missing.getFile());
+            } catch (InterruptedIOException interrupted) {
+                sendError(exchange, 503, "The service is shutting down");
+            } catch (Exception failed) {
+                sendError(exchange, 500, "Tabulation failed: " + failed.getMessage());
+            }
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String json = "{\"cachedResults\":" + cache.size()
+                    + ",\"cacheCapacity\":" + cache.getCapacity()
+                    + ",\"cacheHits\":" + cache.getHits()
+                    + ",\"cacheMisses\":" + cache.getMisses()
+                    + ",\"tabulationsRunning\":" + (maxConcurrentTabulations - tabulations.availablePermits()) + "}";
+            send(exchange, 200, json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // The upload is written to a temporary file, as the engine reads ballots from files, and
+    // hashed on the way; the file is only read again when the result is not cached
+    private byte[] tabulateUpload(HttpExchange exchange, Options options) throws Exception {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length != null && Long.parseLong(length) > maxUploadBytes) {
+            throw new RequestException(413, "Ballot files are limited to " + maxUploadBytes + " bytes");
+        }
+        Path upload = Files.createTempFile("ballots", ".txt");
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream in = exchange.getRequestBody(); OutputStream out = Files.newOutputStream(upload)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long total = 0;
+                for (int n; (n = in.read(buffer)) > 0; ) {
+                    total += n;
+                    if (total > maxUploadBytes) {
+                        throw new RequestException(413, "Ballot files are limited to " + maxUploadBytes + " bytes");
+                    }
+                    digest.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                }
+            }
+            return cache.get(HexFormat.of().formatHex(digest.digest()) + options.key(),
+                    () -> tabulate(upload, options));
+        } finally {
+            Files.deleteIfExists(upload);
+        }
+    }
+
+    private byte[] tabulateFile(Path file, Options options) throws Exception {
+        return cache.get(hash(file) + options.key(), () -> tabulate(file, options));
+    }
+
+    private byte[] tabulate(Path ballotFile, Options options) throws IOException {
+        try {
+            tabulations.acquire();
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to tabulate");
+        }
+        TabulationMetrics metrics = idleMetrics.poll();
+        try {
+            TabulationEngine engine = new TabulationEngine();
+            engine.setParallelism(Runtime.getRuntime().availableProcessors() / maxConcurrentTabulations);
+            engine.setDeduplicateBallots(options.dedup);
+            engine.setBatchElimination(options.batchElimination);
+            engine.setSeed(options.seed);
+            engine.setMetrics(metrics);
+            return engine.tabulate(ballotFile).toJson().getBytes(StandardCharsets.UTF_8);
+        } finally {
+            idleMetrics.add(metrics);
+            tabulations.release();
+        }
+    }
+
+    // Hashes a server-side file once per version of it
+    private String hash(Path file) throws Exception {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        FileHash version = new FileHash(attributes.size(), attributes.lastModifiedTime().toMillis());
+        FileHash known = fileHashes.compute(file, (path, previous) -> previous != null && previous.matches(version)
+                && !previous.hash.isCompletedExceptionally() ? previous : version);
+        if (known == version) {
+            try {
+                version.hash.complete(readHash(file));
+            } catch (Exception | Error failed) {
+                fileHashes.remove(file, version);
+                version.hash.completeExceptionally(failed);
+                throw failed;
+            }
+        }
+        try {
+            return known.hash.get();
+        } catch (ExecutionException failed) {
+            if (failed.getCause() instanceof Error) {
+                throw (Error) failed.getCause();
+            }
+            throw (Exception) failed.getCause();
+        }
+    }
+
+    private static String readHash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // Only regular files below the ballot directory, also after following symbolic links.
+    // Errors name the file as the client did, never by its path on the server.
+    private Path resolve(String name) throws IOException {
+        Path file = ballotRoot.resolve(name).normalize();
+        if (!file.startsWith(ballotRoot)) {
+            throw new RequestException(403, "Files must be below the ballot directory");
+        }
+        Path realFile;
+        try {
+            realFile = file.toRealPath();
+        } catch (NoSuchFileException missing) {
+            throw new NoSuchFileException(name);
+        }
+        if (!realFile.startsWith(ballotRoot)) {
+            throw new RequestException(403, "Files must be below the ballot directory");
+        }
+        if (!Files.isRegularFile(realFile)) {
+            throw new NoSuchFileException(name);
+        }
+        return realFile;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException missing) {
+            throw new IllegalStateException("SHA-256 is not available", missing);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    query.put(URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+                            URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+                } else if (!parameter.isEmpty()) {
+                    query.put(URLDecoder.decode(parameter, StandardCharsets.UTF_8), "");
+                }
+            }
+        }
+        return query;
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] json) {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, json.length);
+            exchange.getResponseBody().write(json);
+        } catch (IOException gone) {
+            // The client went away; nothing left to tell it
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        String escaped = String.valueOf(message).replace("\\", "\\\\").replace("\"", "\\\"")
+                .replace("\n", "\\n");
+        send(exchange, status, ("{\"error\":\"" + escaped + "\"}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Rule options of one request; everything that can change the result is part of the cache key
+    private static final class Options {
+        private final Long seed;
+        private final boolean batchElimination;
+        private final boolean dedup;
+
+        Options(Map<String, String> query) {
+            try {
+                this.seed = query.containsKey("seed") ? Long.valueOf(query.get("seed")) : null;
+            } catch (NumberFormatException badSeed) {
+                throw new RequestException(400, "seed must be a whole number");
+            }
+            this.batchElimination = Boolean.parseBoolean(query.get("batchElimination"));
+            this.dedup = Boolean.parseBoolean(query.get("dedup"));
+        }
+
+        String key() {
+            return "|seed=" + (seed == null ? "random" : seed) + "|batchElimination=" + batchElimination;
+        }
+    }
+
+    // One version of a file and its content hash, pending while the first request reads it
+    private static final class FileHash {
+        private final long size;
+        private final long modified;
+        private final CompletableFuture<String> hash = new CompletableFuture<>();
+
+        FileHash(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        boolean matches(FileHash other) {
+            return size == other.size && modified == other.modified;
+        }
+    }
+
+    // A request the service refuses, with the HTTP status that says why
+    private static final class RequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
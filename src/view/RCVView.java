@@ -1,6 +1,7 @@
 package view;
 
 import controller.RCVController;
+import model.RoundResult;
 
 import java.awt.Dimension;
 import java.awt.Font;
@@ -8,8 +9,9 @@ import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
+import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.UIManager;
 
@@ -19,27 +21,33 @@ public class RCVView extends JFrame {
     // to fiddle with GUI controls
     private static final int FRAME_WIDTH = 870;
     private static final int FRAME_HEIGHT = 650;
-    private static final int AREA_ROWS = 30;
-    private static final int AREA_COLUMNS = 85;
+    private static final int TABLE_WIDTH = 830;
+    private static final int TABLE_HEIGHT = 340;
     private static final int FIELD_WIDTH = 15;
     private static final String BUTTON_NAME = "Do a Round of Voting";
+    private static final String ALL_ROUNDS_BUTTON_NAME = "Run All Rounds";
+    private static final String CANCEL_BUTTON_NAME = "Cancel";
     private static final String USER_PROMPT = "Enter 'ballots.txt' (no quotes) as name of data file: ";
 
-    private final JTextArea resultArea;
+    private final RoundTableModel rounds;
     private final RCVController ctrl;
 
     private JLabel promptJLabel;
     private JTextField fileNameField;
     private JButton button;
+    private JButton allRoundsButton;
+    private JButton cancelButton;
+    private JProgressBar progressBar;
+    private JTable roundTable;
 
     public RCVView(RCVController rankedChoiceController) {
         ctrl = rankedChoiceController;
-        resultArea = new JTextArea(AREA_ROWS, AREA_COLUMNS);
-        resultArea.setEditable(false);
-        resultArea.setText("");
+        rounds = new RoundTableModel();
 
         createTextField();
-        createButton();
+        createButtons();
+        createProgressBar();
+        createTable();
         createPanel();
 
         setSize(FRAME_WIDTH, FRAME_HEIGHT);
@@ -55,7 +63,7 @@ public class RCVView extends JFrame {
         fileNameField = new JTextField(FIELD_WIDTH);
     }
 
-    private void createButton() {
+    private void createButtons() {
         button = new JButton(BUTTON_NAME);
         button.setFont(new Font("Verdana", Font.BOLD, 18));
         button.setPreferredSize(new Dimension(300, 80));
@@ -63,7 +71,36 @@ public class RCVView extends JFrame {
         // at Chapter 6, Section 5, from minute 3:25 to minute 3:56.
         // https://catalog.libraries.psu.edu/catalog/37440551
         button.addActionListener((event) ->
-                showResults(fileNameField.getText()));
+                ctrl.runRounds(fileNameField.getText(), false));
+
+        allRoundsButton = new JButton(ALL_ROUNDS_BUTTON_NAME);
+        allRoundsButton.setFont(new Font("Verdana", Font.BOLD, 18));
+        allRoundsButton.setPreferredSize(new Dimension(250, 80));
+        allRoundsButton.addActionListener((event) ->
+                ctrl.runRounds(fileNameField.getText(), true));
+
+        cancelButton = new JButton(CANCEL_BUTTON_NAME);
+        cancelButton.setFont(new Font("Verdana", Font.BOLD, 18));
+        cancelButton.setPreferredSize(new Dimension(150, 80));
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener((event) -> ctrl.cancel());
+    }
+
+    private void createProgressBar() {
+        progressBar = new JProgressBar();
+        progressBar.setStringPainted(true);
+        progressBar.setString("");
+        progressBar.setPreferredSize(new Dimension(TABLE_WIDTH, 28));
+    }
+
+    private void createTable() {
+        // Rows are only painted while visible, so the table never slows the window down
+        roundTable = new JTable(rounds);
+        roundTable.setFont(new Font("Verdana", Font.PLAIN, 16));
+        roundTable.setRowHeight(26);
+        roundTable.setFillsViewportHeight(true);
+        roundTable.getColumnModel().getColumn(0).setPreferredWidth(60);
+        roundTable.getColumnModel().getColumn(1).setPreferredWidth(420);
     }
 
     private void createPanel() {
@@ -71,17 +108,50 @@ public class RCVView extends JFrame {
         panel.add(promptJLabel);
         panel.add(fileNameField);
 
-        JScrollPane scrollPane = new JScrollPane(resultArea);
+        JScrollPane scrollPane = new JScrollPane(roundTable);
+        scrollPane.setPreferredSize(new Dimension(TABLE_WIDTH, TABLE_HEIGHT));
 
         panel.add(scrollPane);
+        panel.add(progressBar);
         panel.add(button);
+        panel.add(allRoundsButton);
+        panel.add(cancelButton);
         add(panel);
     }
 
-    private void showResults(String fileNameFromUser) {
-        Font font = new Font("Verdana", Font.BOLD, 24);
-        resultArea.setFont(font);
-        resultArea.append(ctrl.showResults(fileNameFromUser) + "\n\n");
+    // Adds the round to the table and scrolls to it
+    public void showRound(RoundResult round) {
+        rounds.addRound(round);
+        int row = rounds.getRowCount() - 1;
+        roundTable.scrollRectToVisible(roundTable.getCellRect(row, 0, true));
+    }
+
+    public void showLoadProgress(long ballotsRead, long bytesRead, long totalBytes) {
+        progressBar.setIndeterminate(totalBytes == 0);
+        progressBar.setMaximum(1000);
+        progressBar.setValue(totalBytes == 0 ? 0 : (int) (bytesRead * 1000 / totalBytes));
+        progressBar.setString(String.format("Reading ballots: %,d", ballotsRead));
+    }
+
+    // Every round eliminates a candidate, so there are at most as many rounds as candidates
+    public void showRoundProgress(int roundsDone, int candidateCount, long ballotCount) {
+        progressBar.setIndeterminate(false);
+        progressBar.setMaximum(Math.max(1, candidateCount));
+        progressBar.setValue(Math.min(roundsDone, candidateCount));
+        progressBar.setString(String.format("%,d ballots, %d rounds counted", ballotCount, roundsDone));
+    }
+
+    public void showStatus(String status) {
+        progressBar.setIndeterminate(false);
+        progressBar.setString(status);
+    }
+
+    // While busy only Cancel can be pressed
+    public void setBusy(boolean busy) {
+        button.setEnabled(!busy);
+        allRoundsButton.setEnabled(!busy);
+        fileNameField.setEnabled(!busy);
+        cancelButton.setEnabled(busy);
     }
 
     public void showMessage(String message) {
@@ -89,11 +159,11 @@ public class RCVView extends JFrame {
         javax.swing.JOptionPane.showMessageDialog(new javax.swing.JFrame(),
                 message);
         fileNameField.requestFocus();
-        resultArea.setText("");
+        rounds.clear();
     }
 
     public void displaySelf() {
         setVisible(true);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,75 @@
+package view;
+
+import model.RoundResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.table.AbstractTableModel;
+
+// One row per completed round. JTable only asks for the cells it is painting, so the table
+// stays fast however many rounds and candidates there are.
+public class RoundTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMNS = {"Round", "Votes", "Eliminated", "Exhausted", "Votes needed", "Winner"};
+
+    private final transient List<RoundResult> rounds = new ArrayList<>();
+
+    public void addRound(RoundResult round) {
+        rounds.add(round);
+        fireTableRowsInserted(rounds.size() - 1, rounds.size() - 1);
+    }
+
+    public void clear() {
+        int size = rounds.size();
+        if (size > 0) {
+            rounds.clear();
+            fireTableRowsDeleted(0, size - 1);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rounds.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == 0 || column == 3 || column == 4 ? Number.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        RoundResult round = rounds.get(row);
+        switch (column) {
+            case 0:
+                return round.getRound();
+            case 1:
+                return round.getVoteCounts().toString();
+            case 2:
+                if (round.getEliminatedCandidates().isEmpty()) {
+                    return "";
+                }
+                return round.getEliminatedCandidates() + (round.isBatchElimination() ? " (defeated)" : "");
+            case 3:
+                return round.getExhaustedTotal();
+            case 4:
+                return round.getVotesNeededToWin();
+            default:
+                if (round.getWinner() == null) {
+                    return "none";
+                }
+                return round.isWinnerDecidedByLot() ? round.getWinner() + " (by lot)" : String.valueOf(round.getWinner());
+        }
+    }
+}